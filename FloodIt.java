@@ -1,3 +1,5 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Random;
@@ -97,6 +99,40 @@ class FloodItWorld extends World {
   ArrayList<ArrayList<Cell>> board;
   // If the user needs the game documentation
   Boolean needHelp;
+  // If pressing "w" or "s" generates a whole new board instead of adding or
+  // removing one row and one column of the current board
+  Boolean regenerateOnResize;
+  // Decides when the animation steps and the frames are due
+  FrameScheduler scheduler;
+  // The last scene drawn, shown again when a frame is skipped
+  WorldScene lastScene;
+  // If mouse and key input waits in the input queue until the next tick, instead
+  // of being handled right away
+  Boolean queueInput;
+  // The mouse and key input waiting for the next tick
+  InputQueue input;
+  // Where finished games are saved, or null if they are not saved
+  SessionStore store;
+  // If the current game has finished and been given to the store
+  Boolean recorded;
+  // If the waterfall has stopped spreading since the last click, and the number
+  // of flooded cells it last counted
+  Boolean settled;
+  int flooded;
+  // The screens and text drawn before, reused while they stay the same
+  SceneCache scenes;
+  // Makes new boards in the background, or null if boards are made when needed
+  BoardSupplier boards;
+  // The new board whose cells are still being built, or null
+  BoardBuffer pending;
+  // If an estimate of the moves left is shown under the click counter
+  Boolean showMovesLeft;
+  // How far the regions of the board are from the flooded region, or null until
+  // the estimate is first shown in a game
+  FloodAnalytics analytics;
+  // All of the eight possible colors, in the order their indices are used
+  static final ArrayList<Color> COLORS = new ArrayList<Color>(Arrays.asList(Color.RED,
+      Color.ORANGE, Color.YELLOW, Color.GREEN, Color.CYAN, Color.BLUE, Color.MAGENTA, Color.GRAY));
 
   // Constructor used for testing purposes
   FloodItWorld(int boardSize, int numColor, Random r) {
@@ -116,6 +152,20 @@ class FloodItWorld extends World {
     // Mutate the left, top, right, and bottom fields of each cell in the board
     this.addNeighbors();
     this.needHelp = false;
+    this.regenerateOnResize = false;
+    this.scheduler = new FrameScheduler(new SystemTimeSource());
+    this.lastScene = null;
+    this.queueInput = false;
+    this.input = new InputQueue();
+    this.store = null;
+    this.recorded = false;
+    this.settled = false;
+    this.flooded = 0;
+    this.scenes = new SceneCache();
+    this.showMovesLeft = false;
+    this.analytics = null;
+    this.boards = null;
+    this.pending = null;
   }
 
   FloodItWorld(int boardSize, int numColor) {
@@ -130,11 +180,24 @@ class FloodItWorld extends World {
     this.maxClicks = (int) ((this.boardSize * 2.5) + (this.numColor / 2));
     this.clock = 0;
     this.r = new Random();
-    // Calling the initBoard method to generate the game board
-    this.board = this.initBoard();
-    // Mutate the left, top, right, and bottom fields of each cell in the board
-    this.addNeighbors();
+    // The first frame is drawn from the colors of the board while its cells are
+    // built in the background
+    this.boards = new BoardSupplier(new Random());
+    this.pending = this.boards.take(this.boardSize, this.numColor);
+    this.board = null;
     this.needHelp = false;
+    this.regenerateOnResize = false;
+    this.scheduler = new FrameScheduler(new SystemTimeSource());
+    this.lastScene = null;
+    this.queueInput = true;
+    this.input = new InputQueue();
+    this.store = null;
+    this.recorded = false;
+    this.settled = false;
+    this.flooded = 0;
+    this.scenes = new SceneCache();
+    this.showMovesLeft = true;
+    this.analytics = null;
   }
 
   // To generate the game board
@@ -165,57 +228,192 @@ class FloodItWorld extends World {
 
   // To get a random color for the cell
   Color getRandomColor() {
-    // All of the eight possible colors
-    ArrayList<Color> colors = new ArrayList<Color>(Arrays.asList(Color.RED, Color.ORANGE,
-        Color.YELLOW, Color.GREEN, Color.CYAN, Color.BLUE, Color.MAGENTA, Color.GRAY));
     // Generate a random index
     int index = r.nextInt(this.numColor);
     // Return the random color
-    return colors.get(index);
+    return COLORS.get(index);
   }
 
   // To add the left, top, right, and bottom values to each cell
   // EFFECT: Mutates the left, top, right, and bottom fields for each cell in the
   // board
   void addNeighbors() {
+    addNeighbors(this.board, this.boardSize);
+  }
+
+  // To connect every cell of the given board of the given size to the cells next
+  // to it
+  // EFFECT: Mutate the left, top, right, and bottom fields of each cell in the board
+  static void addNeighbors(ArrayList<ArrayList<Cell>> board, int size) {
     // For each row in the board
-    for (ArrayList<Cell> row : this.board) {
+    for (int y = 0; y < size; y++) {
+      ArrayList<Cell> row = board.get(y);
       // For each cell in the row
-      for (Cell cell : row) {
+      for (int x = 0; x < size; x++) {
+        Cell cell = row.get(x);
         // The left adjacent cell
         // If the cell is at the begining of the row, there is no cell to the left
-        if (row.indexOf(cell) > 0) {
-          cell.addLeft(row.get(row.indexOf(cell) - 1));
+        if (x > 0) {
+          cell.addLeft(row.get(x - 1));
         }
         // The top adjacent cell
         // If the row is at the top of the board, there is no cell above
-        if (this.board.indexOf(row) > 0) {
-          cell.addTop(this.board.get(this.board.indexOf(row) - 1).get(row.indexOf(cell)));
+        if (y > 0) {
+          cell.addTop(board.get(y - 1).get(x));
         }
         // The right adjacent cell
         // If the cell is at the end of the row, there is no cell to the right
-        if (row.indexOf(cell) < this.boardSize - 1) {
-          cell.addRight(row.get(row.indexOf(cell) + 1));
+        if (x < size - 1) {
+          cell.addRight(row.get(x + 1));
         }
         // The bottom adjacent cell
         // If the row is at the bottom of the board, there is no cell below
-        if (this.board.indexOf(row) < this.boardSize - 1) {
-          cell.addBottom(this.board.get(this.board.indexOf(row) + 1).get(row.indexOf(cell)));
+        if (y < size - 1) {
+          cell.addBottom(board.get(y + 1).get(x));
         }
       }
     }
   }
 
-  // To visualize the flood it game
+  // To replace the board with a new random board of the current size and number
+  // of colors, taking one made in the background if there are any
+  // EFFECT: Mutates the board, or the pending board until its cells are built
+  void regenerate() {
+    if (this.boards == null) {
+      this.board = this.initBoard();
+      this.addNeighbors();
+    }
+    else {
+      this.pending = this.boards.take(this.boardSize, this.numColor);
+      this.boardReady();
+    }
+  }
+
+  // To determine if the cells of the board are built, taking the cells of the
+  // pending board if the background thread has finished them
+  // EFFECT: May replace the board with the pending board
+  boolean boardReady() {
+    if (this.pending != null && this.pending.isReady()) {
+      this.awaitBoard();
+    }
+    return this.pending == null;
+  }
+
+  // To wait until the cells of the pending board are built
+  // EFFECT: Replaces the board with the pending board, if there is one
+  void awaitBoard() {
+    if (this.pending != null) {
+      this.board = this.pending.await();
+      this.pending = null;
+    }
+  }
+
+  // To grow the board by one row and one column of random cells
+  // EFFECT: Adds a cell to the end of every row and a new row at the bottom, and
+  // connects only the new cells and the cells along the old edges
+  void growBoard() {
+    int size = this.boardSize;
+    // Add a cell to the end of every row
+    for (int y = 0; y < size; y++) {
+      ArrayList<Cell> row = this.board.get(y);
+      Cell cell = new Cell(size, y, this.getRandomColor(), false);
+      cell.addLeft(row.get(size - 1));
+      row.get(size - 1).addRight(cell);
+      if (y > 0) {
+        cell.addTop(this.board.get(y - 1).get(size));
+        this.board.get(y - 1).get(size).addBottom(cell);
+      }
+      row.add(cell);
+    }
+    // Add a row at the bottom
+    ArrayList<Cell> lastRow = this.board.get(size - 1);
+    ArrayList<Cell> newRow = new ArrayList<Cell>();
+    for (int x = 0; x <= size; x++) {
+      Cell cell = new Cell(x, size, this.getRandomColor(), false);
+      if (x > 0) {
+        cell.addLeft(newRow.get(x - 1));
+        newRow.get(x - 1).addRight(cell);
+      }
+      cell.addTop(lastRow.get(x));
+      lastRow.get(x).addBottom(cell);
+      newRow.add(cell);
+    }
+    this.board.add(newRow);
+    this.boardSize++;
+  }
+
+  // To shrink the board by its last row and its last column
+  // EFFECT: Removes the cells and disconnects the cells along the new edges
+  void shrinkBoard() {
+    this.boardSize--;
+    int size = this.boardSize;
+    this.board.remove(size);
+    for (int y = 0; y < size; y++) {
+      ArrayList<Cell> row = this.board.get(y);
+      row.remove(size);
+      row.get(size - 1).right = new MtCell();
+    }
+    for (Cell cell : this.board.get(size - 1)) {
+      cell.bottom = new MtCell();
+    }
+  }
+
+  // To start a new game on the current cells. The cells flooded in the last game
+  // are one block of the origin color, so they get new random colors before only
+  // the origin is flooded again. Only the flooded cells are visited, walking out
+  // from the origin, so this is called before the board is shrunk.
+  // EFFECT: Mutates the color and flooded fields of the flooded cells
+  void unflood() {
+    ArrayList<Cell> flooded = new ArrayList<Cell>();
+    Cell origin = this.board.get(0).get(0);
+    origin.flooded = false;
+    flooded.add(origin);
+    for (int next = 0; next < flooded.size(); next++) {
+      Cell cell = flooded.get(next);
+      cell.color = this.getRandomColor();
+      this.unfloodAt(cell.x - 1, cell.y, flooded);
+      this.unfloodAt(cell.x, cell.y - 1, flooded);
+      this.unfloodAt(cell.x + 1, cell.y, flooded);
+      this.unfloodAt(cell.x, cell.y + 1, flooded);
+    }
+    origin.flooded = true;
+  }
+
+  // To unflood the cell at the given column and row, if it is on the board and
+  // flooded, and add it to the given cells
+  // EFFECT: Mutates the flooded field of the cell and the list of cells
+  void unfloodAt(int x, int y, ArrayList<Cell> flooded) {
+    if (x >= 0 && y >= 0 && x < this.boardSize && y < this.boardSize) {
+      Cell cell = this.board.get(y).get(x);
+      if (cell.flooded) {
+        cell.flooded = false;
+        flooded.add(cell);
+      }
+    }
+  }
+
+  // To visualize the flood it game, showing the last scene again if drawing is
+  // falling behind. The waterfall only moves in onTick, so it keeps the same pace
+  // however many frames are drawn.
   public WorldScene makeScene() {
-    // Mutate the flooded field of the cells
-    this.mutateFlooded();
+    // Draw the cells of a new board once they are built
+    this.boardReady();
+    if (this.lastScene != null && !this.scheduler.shouldRender()) {
+      return this.lastScene;
+    }
+    long renderStart = this.scheduler.startRender();
+    this.lastScene = this.drawScene();
+    this.scheduler.finishRender(renderStart);
+    return this.lastScene;
+  }
 
+  // To draw the flood it game
+  WorldScene drawScene() {
     if (this.needHelp) {
       return this.help();
     }
     // If the user has already won the game, return the winning screen
-    if (this.isWinner()) {
+    if (this.pending == null && this.isWinner()) {
       return this.winner();
     }
 
@@ -225,27 +423,26 @@ class FloodItWorld extends World {
       // For every row in the board
       for (int row = 0; row < this.boardSize; row++) {
         // Place the cell at the desired coordinates
-        background.placeImageXY(this.board.get(column).get(row).drawCell(500 / this.boardSize),
+        background.placeImageXY(this.drawCellAt(column, row, 500 / this.boardSize),
             ((500 / this.boardSize) / 2) + ((500 / this.boardSize) * row) + 100,
             ((500 / this.boardSize) / 2) + ((500 / this.boardSize) * column) + 100);
       }
     }
 
-    TextImage helpMessage1 = new TextImage("Enter \"r\" to reset the board", 20, FontStyle.BOLD,
-        Color.BLACK);
-    TextImage helpMessage2 =  new TextImage("Enter \"h\" to view "
-        + "game documentation", 20, FontStyle.BOLD, Color.BLACK);
+    TextImage helpMessage1 = this.scenes.resetHelp;
+    TextImage helpMessage2 = this.scenes.docsHelp;
     // Display the number of current user clicks
-    TextImage clickCounter = new TextImage(
-        Integer.toString(this.numClicks) + "/" + Integer.toString(this.maxClicks), 25,
-        FontStyle.BOLD, Color.BLACK);
+    TextImage clickCounter = this.clickCounter();
     // Display the clock timer
-    TextImage clockTimer = new TextImage("Time in seconds: " + Integer.toString(this.clock), 25,
-        FontStyle.BOLD, Color.BLACK);
+    TextImage clockTimer = this.clockTimer();
     background.placeImageXY(helpMessage1, 350, 20);
     background.placeImageXY(helpMessage2, 350, 40);
     background.placeImageXY(clockTimer, 350, 75);
     background.placeImageXY(clickCounter, 350, 650);
+    // Display the estimate of the moves left, once the cells are built
+    if (this.showMovesLeft && this.pending == null) {
+      background.placeImageXY(this.movesLeftText(), 350, 680);
+    }
 
     // If the number of user clicks is equal to the maximum number of allowed
     // clicks, return the final screen
@@ -261,6 +458,61 @@ class FloodItWorld extends World {
     return background;
   }
 
+  // To draw the cell in the given row and column, from the colors of the pending
+  // board if its cells are not built yet
+  RectangleImage drawCellAt(int row, int column, int cellSize) {
+    if (this.pending != null) {
+      return new RectangleImage(cellSize, cellSize, OutlineMode.SOLID,
+          this.pending.colorAt(column, row));
+    }
+    return this.board.get(row).get(column).drawCell(cellSize);
+  }
+
+  // To get the text of the number of current user clicks, drawn again only when
+  // the clicks change
+  TextImage clickCounter() {
+    if (this.scenes.clickCounter == null || this.scenes.counterClicks != this.numClicks
+        || this.scenes.counterMax != this.maxClicks) {
+      this.scenes.clickCounter = new TextImage(
+          Integer.toString(this.numClicks) + "/" + Integer.toString(this.maxClicks), 25,
+          FontStyle.BOLD, Color.BLACK);
+      this.scenes.counterClicks = this.numClicks;
+      this.scenes.counterMax = this.maxClicks;
+    }
+    return this.scenes.clickCounter;
+  }
+
+  // To get the text of the estimate of the moves left, drawn again only when the
+  // estimate changes. The analytics are started the first time, and kept up to
+  // date by every click after that.
+  TextImage movesLeftText() {
+    if (this.analytics == null) {
+      this.analytics = FloodAnalytics.of(this);
+    }
+    int movesLeft = this.analytics.movesLeft();
+    if (this.scenes.movesLeft == null || this.scenes.shownMovesLeft != movesLeft) {
+      this.scenes.movesLeft = new TextImage("At least " + Integer.toString(movesLeft)
+          + " moves to go", 20, FontStyle.BOLD, Color.BLACK);
+      this.scenes.shownMovesLeft = movesLeft;
+    }
+    return this.scenes.movesLeft;
+  }
+
+  // To get the text of the clock timer, drawn again only when the clock changes
+  TextImage clockTimer() {
+    if (this.scenes.clockTimer == null || this.scenes.timerClock != this.clock) {
+      this.scenes.clockTimer = new TextImage("Time in seconds: " + Integer.toString(this.clock),
+          25, FontStyle.BOLD, Color.BLACK);
+      this.scenes.timerClock = this.clock;
+    }
+    return this.scenes.clockTimer;
+  }
+
+  // To determine if the given position is on the board
+  boolean onBoard(Posn pos) {
+    return pos.x >= 100 && pos.x <= 600 && pos.y >= 100 && pos.y <= 600;
+  }
+
   // To determine if the player has won the game
   boolean isWinner() {
     // The number of cells that are not flooded
@@ -279,8 +531,18 @@ class FloodItWorld extends World {
     return (numFalse == 0);
   }
 
-  // To display the losing screen
+  // To display the losing screen, drawn again only when the number of clicks
+  // changes
   WorldScene loser() {
+    if (this.scenes.loser == null || this.scenes.loserClicks != this.numClicks) {
+      this.scenes.loser = this.drawLoser();
+      this.scenes.loserClicks = this.numClicks;
+    }
+    return this.scenes.loser;
+  }
+
+  // To draw the losing screen
+  WorldScene drawLoser() {
     TextImage text = new TextImage("Loser!", 150, FontStyle.BOLD, Color.BLACK);
     TextImage finalScore = new TextImage("Clicks to solution: " + Integer.toString(this.numClicks),
         25, FontStyle.BOLD, Color.BLACK);
@@ -293,8 +555,18 @@ class FloodItWorld extends World {
     return background;
   }
 
-  // To display the winning screen
+  // To display the winning screen, drawn again only when the number of clicks
+  // changes
   WorldScene winner() {
+    if (this.scenes.winner == null || this.scenes.winnerClicks != this.numClicks) {
+      this.scenes.winner = this.drawWinner();
+      this.scenes.winnerClicks = this.numClicks;
+    }
+    return this.scenes.winner;
+  }
+
+  // To draw the winning screen
+  WorldScene drawWinner() {
     TextImage text = new TextImage("Winner!", 150, FontStyle.BOLD, Color.BLACK);
     TextImage finalScore = new TextImage("Clicks to solution: " + Integer.toString(this.numClicks),
         25, FontStyle.BOLD, Color.BLACK);
@@ -307,8 +579,17 @@ class FloodItWorld extends World {
     return background;
   }
 
-  // To generate the documentation of the game functionality 
+  // To display the documentation of the game functionality, which is only drawn
+  // once
   WorldScene help() {
+    if (this.scenes.help == null) {
+      this.scenes.help = this.drawHelp();
+    }
+    return this.scenes.help;
+  }
+
+  // To generate the documentation of the game functionality 
+  WorldScene drawHelp() {
     WorldScene background = new WorldScene(700, 700);
     
     String title = "FloodIt";
@@ -359,62 +640,50 @@ class FloodItWorld extends World {
   }
 
   // To handle key input and is given the key that has been pressed
-  // EFFECT: The board is reset if the "r" key is pressed
+  // EFFECT: The board is reset if the "r" key is pressed, and resized if the "w"
+  // or "s" key is pressed
   public void onKeyEvent(String key) {
+    // Show the effect of the key on the next frame
+    this.scheduler.requestRender();
+    if (this.waitForInput()) {
+      this.input.add(new KeyInput(key));
+    }
+    else {
+      this.handleKey(key);
+    }
+  }
+
+  // To handle the key that has been pressed right away. Every new game starts
+  // through startGame, the same way a batch of queued keys starts one.
+  // EFFECT: The board is reset if the "r" key is pressed, and resized if the "w"
+  // or "s" key is pressed
+  void handleKey(String key) {
     // If "r" key is pressed, the board will reset
     if (key.equals("r")) {
-      this.clock = 0;
-      this.numClicks = 0;
-      this.r = new Random();
-      this.board = this.initBoard();
-      this.addNeighbors();
+      this.startGame(this.boardSize, this.numColor, true);
     }
     // If the "w" key is pressed, the board size will increase
     if (key.equals("w")) {
-      this.clock = 0;
-      this.numClicks = 0;
-      this.maxClicks = (int) ((this.boardSize * 2.5) + (this.numColor / 2));
-      this.boardSize++;
-      this.r = new Random();
-      this.board = this.initBoard();
-      this.addNeighbors();
+      this.startGame(this.boardSize + 1, this.numColor, false);
     }
     // If the "s" key is pressed, the board size will decrease
     if (key.equals("s")) {
       if (this.boardSize != 2) {
-        this.clock = 0;
-        this.numClicks = 0;
-        this.maxClicks = (int) ((this.boardSize * 2.5) + (this.numColor / 2));
-        this.boardSize--;
-        this.r = new Random();
-        this.board = this.initBoard();
-        this.addNeighbors();
+        this.startGame(this.boardSize - 1, this.numColor, false);
       }
     }
     // If the "a" key is pressed, the number of colors will increase (maximum 8
     // colors)
     if (key.equals("a")) {
       if (this.numColor != 8) {
-        this.clock = 0;
-        this.numClicks = 0;
-        this.maxClicks = (int) ((this.boardSize * 2.5) + (this.numColor / 2));
-        this.numColor++;
-        this.r = new Random();
-        this.board = this.initBoard();
-        this.addNeighbors();
+        this.startGame(this.boardSize, this.numColor + 1, true);
       }
     }
     // If the "d" key is pressed, the number of colors will decrease (minimum 2
     // colors)
     if (key.equals("d")) {
       if (this.numColor != 2) {
-        this.clock = 0;
-        this.numClicks = 0;
-        this.maxClicks = (int) ((this.boardSize * 2.5) + (this.numColor / 2));
-        this.numColor--;
-        this.r = new Random();
-        this.board = this.initBoard();
-        this.addNeighbors();
+        this.startGame(this.boardSize, this.numColor - 1, true);
       }
     }
     // If the "h" key is pressed, documentation of detailed game functionality will
@@ -429,6 +698,13 @@ class FloodItWorld extends World {
     }
   }
 
+  // To determine if input has to wait in the queue for the next tick: when input
+  // is always queued, when input is already waiting, or while the cells of a new
+  // board are being built, so the game thread never waits for them
+  boolean waitForInput() {
+    return this.queueInput || !this.input.events.isEmpty() || !this.boardReady();
+  }
+
   // To get the cell from the board at the given position
   Cell getCell(Posn pos) {
     Cell cell = this.board.get(Math.floorDiv(pos.y - 100, (500 / this.boardSize)))
@@ -439,20 +715,123 @@ class FloodItWorld extends World {
   // To handle if a mouse button is pressed
   // EFFECT: Update the game based on where the mouse is clicked
   public void onMousePressed(Posn pos) {
+    // Show the effect of the click on the next frame
+    this.scheduler.requestRender();
+    if (this.waitForInput()) {
+      this.input.add(new MouseInput(pos));
+    }
+    else {
+      this.handleMouse(pos);
+    }
+  }
+
+  // To handle the mouse being pressed at the given position right away
+  // EFFECT: Update the game based on where the mouse is clicked
+  void handleMouse(Posn pos) {
     // Check if the x and y coordinates are within the coordinates of the board
     // boundaries
-    if (pos.x >= 100 && pos.x <= 600 && pos.y >= 100 && pos.y <= 600) {
-      if (this.numClicks < maxClicks) {
-        // Increment the number of user clicks
-        this.numClicks++;
-        // Get the clicked cell
-        Cell cell = this.getCell(pos);
-        // Change color of flooded cells
-        this.board.get(0).get(0).color = cell.color;
+    if (this.onBoard(pos)) {
+      if (this.numClicks < this.maxClicks) {
+        // Get the clicked cell and flood with its color
+        this.pickColor(this.getCell(pos).color);
       }
     }
   }
 
+  // To flood the board with the given color as one user click
+  // EFFECT: Increments numClicks and changes the color of the origin cell
+  void pickColor(Color color) {
+    if (this.numClicks < this.maxClicks) {
+      // Increment the number of user clicks
+      this.numClicks++;
+      // Change color of flooded cells
+      this.board.get(0).get(0).color = color;
+      this.settled = false;
+      // Bring the regions next to the ones this floods closer
+      if (this.analytics != null) {
+        this.analytics.move(COLORS.indexOf(color));
+      }
+    }
+  }
+
+  // To count the number of flooded cells in the board
+  int countFlooded() {
+    int numFlooded = 0;
+    for (ArrayList<Cell> row : this.board) {
+      for (Cell cell : row) {
+        if (cell.flooded) {
+          numFlooded++;
+        }
+      }
+    }
+    return numFlooded;
+  }
+
+  // To start a new game with the given size and number of colors. Only a
+  // change in size keeps the current cells; a new board is generated otherwise.
+  // EFFECT: Resets the clock and clicks, and resizes or regenerates the board
+  void startGame(int size, int colors, boolean regenerate) {
+    this.clock = 0;
+    this.scheduler.restart();
+    this.recorded = false;
+    this.settled = false;
+    this.analytics = null;
+    this.numClicks = 0;
+    this.maxClicks = (int) ((size * 2.5) + (colors / 2));
+    this.r = new Random();
+    if (regenerate || this.regenerateOnResize || colors != this.numColor) {
+      this.boardSize = size;
+      this.numColor = colors;
+      this.regenerate();
+    }
+    else {
+      this.unflood();
+      while (this.boardSize < size) {
+        this.growBoard();
+      }
+      while (this.boardSize > size) {
+        this.shrinkBoard();
+      }
+    }
+  }
+
+  // To start a new game on the current cells with the given color index of every
+  // cell, row by row, so that a board can be played again without being rebuilt
+  // EFFECT: Resets the clicks and mutates the color and flooded fields of the cells
+  void loadBoard(int numColor, int[] colors) {
+    this.numColor = numColor;
+    this.numClicks = 0;
+    this.maxClicks = (int) ((this.boardSize * 2.5) + (numColor / 2));
+    this.analytics = null;
+    int index = 0;
+    for (ArrayList<Cell> row : this.board) {
+      for (Cell cell : row) {
+        cell.color = COLORS.get(colors[index]);
+        cell.flooded = index == 0;
+        index++;
+      }
+    }
+    this.floodCompletely();
+  }
+
+  // To run the waterfall effect until no more cells can be flooded, without waiting
+  // for ticks. Used when the board is played without a window.
+  // EFFECT: Mutates the flooded and color fields of the cells
+  void floodCompletely() {
+    Color color = this.board.get(0).get(0).color;
+    int before = -1;
+    int after = this.countFlooded();
+    while (before != after) {
+      this.changeFloodedCellColor(color);
+      this.mutateFlooded();
+      before = after;
+      after = this.countFlooded();
+    }
+    this.changeFloodedCellColor(color);
+    this.settled = true;
+    this.flooded = after;
+  }
+
   // To change the flooded field
   // EFFECT: Mutate the field from false to true
   void mutateFlooded() {
@@ -505,14 +884,396 @@ class FloodItWorld extends World {
     }
   }
 
-  // To handle clock ticking
-  // EFFECT: Mutates the clock field by incrementing the time and changes the
-  // colors of the cells
+  // To handle clock ticking. Ticks may come late or early, so the animation
+  // steps that are due are run together and the clock follows the time source.
+  // The flooded cells are only counted while the waterfall is still spreading.
+  // EFFECT: Handles the queued input, mutates the clock field by updating the
+  // time and changes the colors of the cells
   public void onTick() {
-    // Create a waterfall effect
-    this.changeFloodedCellColor(this.board.get(0).get(0).color);
+    // Wait for the cells of a new board without holding up the frames; the input
+    // stays queued until then
+    if (!this.boardReady()) {
+      return;
+    }
+    // Handle the input since the last tick as one batch
+    this.input.drain(this);
+    int steps = this.scheduler.stepsDue();
+    for (int step = 0; step < steps; step++) {
+      // Create a waterfall effect
+      this.changeFloodedCellColor(this.board.get(0).get(0).color);
+      this.mutateFlooded();
+      // The waterfall has stopped once a step floods no more cells
+      if (!this.settled) {
+        int count = this.countFlooded();
+        this.settled = count == this.flooded;
+        this.flooded = count;
+      }
+    }
     // Update the clock
-    this.clock++;
+    this.clock = this.scheduler.elapsedSeconds();
+    this.recordResult();
+  }
+
+  // To give the current game to the store once it has finished, which is only
+  // known once the waterfall of the last click has stopped spreading
+  // EFFECT: Queues the game in the store and mutates the recorded field
+  void recordResult() {
+    if (this.store != null && !this.recorded && this.settled) {
+      boolean won = this.flooded == this.boardSize * this.boardSize;
+      if (won || this.numClicks == this.maxClicks) {
+        this.store.record(new GameResult(this.boardSize, this.numColor, this.numClicks,
+            this.clock, won, System.currentTimeMillis()));
+        this.recorded = true;
+      }
+    }
+  }
+}
+
+// Represents the screens and text of a FloodItWorld that stay the same from one
+// frame to the next, with the values they were drawn for
+class SceneCache {
+  // The documentation screen, which never changes
+  WorldScene help;
+  // The winning and losing screens, and the clicks they show
+  WorldScene winner;
+  int winnerClicks;
+  WorldScene loser;
+  int loserClicks;
+  // The header text above the board, which never changes
+  TextImage resetHelp;
+  TextImage docsHelp;
+  // The click counter, and the clicks it shows
+  TextImage clickCounter;
+  int counterClicks;
+  int counterMax;
+  // The clock timer, and the time it shows
+  TextImage clockTimer;
+  int timerClock;
+  // The estimate of the moves left, and the number it shows
+  TextImage movesLeft;
+  int shownMovesLeft;
+
+  SceneCache() {
+    this.resetHelp = new TextImage("Enter \"r\" to reset the board", 20, FontStyle.BOLD,
+        Color.BLACK);
+    this.docsHelp = new TextImage("Enter \"h\" to view game documentation", 20,
+        FontStyle.BOLD, Color.BLACK);
+  }
+}
+
+// Represents mouse or key input waiting to be handled
+interface IInputEvent {
+  // To add this input to the given batch
+  void addTo(InputBatch batch);
+
+  // To determine if this input can only be handled once the cells of the board
+  // are built
+  boolean needsBoard();
+}
+
+// Represents a key that has been pressed
+class KeyInput implements IInputEvent {
+  String key;
+
+  KeyInput(String key) {
+    this.key = key;
+  }
+
+  // To add this input to the given batch
+  public void addTo(InputBatch batch) {
+    batch.key(this.key);
+  }
+
+  // To determine if this input can only be handled once the cells of the board
+  // are built
+  public boolean needsBoard() {
+    return false;
+  }
+}
+
+// Represents the mouse being pressed at a position
+class MouseInput implements IInputEvent {
+  Posn pos;
+
+  MouseInput(Posn pos) {
+    this.pos = pos;
+  }
+
+  // To add this input to the given batch
+  public void addTo(InputBatch batch) {
+    batch.click(this.pos);
+  }
+
+  // To determine if this input can only be handled once the cells of the board
+  // are built
+  public boolean needsBoard() {
+    return true;
+  }
+}
+
+// Represents the input received since the last tick
+class InputQueue {
+  // The input in the order it was received
+  ArrayList<IInputEvent> events;
+
+  InputQueue() {
+    this.events = new ArrayList<IInputEvent>();
+  }
+
+  // To add input to the end of the queue
+  // EFFECT: Mutates the events field
+  void add(IInputEvent event) {
+    this.events.add(event);
+  }
+
+  // To handle the queued input as one batch. A click that comes after a new game
+  // whose cells are still being built stays queued, with the input after it,
+  // until a later tick finds the cells built.
+  // EFFECT: Updates the given game and removes the handled input from the queue
+  void drain(FloodItWorld world) {
+    if (!this.events.isEmpty()) {
+      InputBatch batch = new InputBatch(world);
+      int handled = 0;
+      while (handled < this.events.size()) {
+        IInputEvent event = this.events.get(handled);
+        if (event.needsBoard()) {
+          batch.startNewGame();
+          if (!world.boardReady()) {
+            break;
+          }
+        }
+        event.addTo(batch);
+        handled++;
+      }
+      batch.finish();
+      this.events.subList(0, handled).clear();
+    }
+  }
+}
+
+// Represents input being handled as one batch. Changes to the size and the number
+// of colors are added up and start one new game, presses of "h" cancel out in
+// pairs, and a click on the color that was just clicked does nothing.
+class InputBatch {
+  // The game the input is for
+  FloodItWorld world;
+  // The size and number of colors of the next game
+  int size;
+  int colors;
+  // If a new game has to start before the next click or at the end of the batch
+  boolean newGame;
+  // If the new game needs a new board, rather than resizing the current one
+  boolean regenerate;
+  // If the documentation is shown or hidden at the end of the batch
+  boolean toggleHelp;
+  // The color of the last click of the batch, or null
+  Color lastClick;
+
+  InputBatch(FloodItWorld world) {
+    this.world = world;
+    this.size = world.boardSize;
+    this.colors = world.numColor;
+    this.newGame = false;
+    this.regenerate = false;
+    this.toggleHelp = false;
+    this.lastClick = null;
+  }
+
+  // To add a key that has been pressed, using the same keys as onKeyEvent
+  // EFFECT: Updates the next game
+  void key(String key) {
+    if (key.equals("r")) {
+      this.newGame = true;
+      this.regenerate = true;
+    }
+    if (key.equals("w")) {
+      this.newGame = true;
+      this.size++;
+    }
+    if (key.equals("s") && this.size != 2) {
+      this.newGame = true;
+      this.size--;
+    }
+    if (key.equals("a") && this.colors != 8) {
+      this.newGame = true;
+      this.colors++;
+    }
+    if (key.equals("d") && this.colors != 2) {
+      this.newGame = true;
+      this.colors--;
+    }
+    if (key.equals("h")) {
+      this.toggleHelp = !this.toggleHelp;
+    }
+  }
+
+  // To add a click at the given position. The game starts first if it changed,
+  // and a click on the color the last click picked does nothing.
+  // EFFECT: Updates the game
+  void click(Posn pos) {
+    this.startNewGame();
+    if (this.world.onBoard(pos)) {
+      Color color = this.world.getCell(pos).color;
+      if (!color.equals(this.lastClick)) {
+        this.world.pickColor(color);
+        this.lastClick = color;
+      }
+    }
+  }
+
+  // To finish the batch
+  // EFFECT: Starts the new game and shows or hides the documentation
+  void finish() {
+    this.startNewGame();
+    if (this.toggleHelp) {
+      this.world.needHelp = !this.world.needHelp;
+    }
+  }
+
+  // To start the new game if the size or number of colors changed, or "r" was
+  // pressed, since the last click
+  // EFFECT: Updates the game
+  void startNewGame() {
+    if (this.newGame) {
+      this.world.startGame(this.size, this.colors, this.regenerate);
+      this.newGame = false;
+      this.regenerate = false;
+      this.lastClick = null;
+    }
+  }
+}
+
+// Represents a source of time in nanoseconds
+interface ITimeSource {
+  // To get the current time in nanoseconds, from an arbitrary start
+  long nanoTime();
+}
+
+// Represents the time of the system
+class SystemTimeSource implements ITimeSource {
+  // To get the current time in nanoseconds, from an arbitrary start
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+}
+
+// Represents time that only moves when told to, used for testing
+class ManualTimeSource implements ITimeSource {
+  // The current time
+  long now;
+
+  ManualTimeSource() {
+    this.now = 0;
+  }
+
+  // To get the current time in nanoseconds, from an arbitrary start
+  public long nanoTime() {
+    return this.now;
+  }
+
+  // To move the time forward by the given number of nanoseconds
+  // EFFECT: Mutates the current time
+  void advance(long nanos) {
+    this.now += nanos;
+  }
+}
+
+// Represents a fixed timestep scheduler: the game is simulated in steps of a
+// fixed length measured against a time source, however often it is ticked, and
+// frames are skipped while drawing takes longer than the frame budget
+class FrameScheduler {
+  // One second in nanoseconds
+  static final long SECOND = 1000000000L;
+
+  // Where the time comes from
+  ITimeSource time;
+  // The length of one animation step
+  long stepNanos;
+  // The most animation steps run by one tick, so a long pause does not stall
+  int maxStepsPerTick;
+  // How long drawing one frame may take before frames are skipped
+  long frameBudgetNanos;
+  // The most frames skipped in a row, so the screen still changes under load
+  int maxSkippedFrames;
+  // When the game started
+  long start;
+  // How far the animation steps have been run
+  long simulated;
+  // How long the last frame took to draw
+  long lastRenderNanos;
+  // The number of frames skipped in a row
+  int skippedFrames;
+  // If the next frame must be drawn, because something the player did changed it
+  boolean renderRequested;
+
+  FrameScheduler(ITimeSource time, long stepNanos, int maxStepsPerTick, long frameBudgetNanos,
+      int maxSkippedFrames) {
+    this.time = time;
+    this.stepNanos = stepNanos;
+    this.maxStepsPerTick = maxStepsPerTick;
+    this.frameBudgetNanos = frameBudgetNanos;
+    this.maxSkippedFrames = maxSkippedFrames;
+    this.restart();
+  }
+
+  // A waterfall step every tenth of a second, and a budget of one frame at 30
+  // frames per second
+  FrameScheduler(ITimeSource time) {
+    this(time, SECOND / 10, 10, SECOND / 30, 3);
+  }
+
+  // To start timing a new game
+  // EFFECT: Resets the start, the animation steps, and the skipped frames
+  void restart() {
+    this.start = this.time.nanoTime();
+    this.simulated = this.start;
+    this.lastRenderNanos = 0;
+    this.skippedFrames = 0;
+    this.renderRequested = true;
+  }
+
+  // To get the number of animation steps to run now
+  // EFFECT: Counts the steps as run, dropping the ones over the limit
+  int stepsDue() {
+    long now = this.time.nanoTime();
+    long due = (now - this.simulated) / this.stepNanos;
+    this.simulated += due * this.stepNanos;
+    return (int) Math.min(due, this.maxStepsPerTick);
+  }
+
+  // To get the number of whole seconds since the game started
+  int elapsedSeconds() {
+    return (int) ((this.time.nanoTime() - this.start) / SECOND);
+  }
+
+  // To determine if the next frame should be drawn
+  // EFFECT: Counts the frame as drawn or skipped
+  boolean shouldRender() {
+    if (this.renderRequested || this.lastRenderNanos <= this.frameBudgetNanos
+        || this.skippedFrames >= this.maxSkippedFrames) {
+      this.renderRequested = false;
+      this.skippedFrames = 0;
+      return true;
+    }
+    this.skippedFrames++;
+    return false;
+  }
+
+  // To make sure the next frame is drawn
+  // EFFECT: Mutates the renderRequested field
+  void requestRender() {
+    this.renderRequested = true;
+  }
+
+  // To get the time a frame starts being drawn
+  long startRender() {
+    return this.time.nanoTime();
+  }
+
+  // To record how long the frame started at the given time took to draw
+  // EFFECT: Mutates the lastRenderNanos field
+  void finishRender(long renderStart) {
+    this.lastRenderNanos = this.time.nanoTime() - renderStart;
   }
 }
 
@@ -617,6 +1378,21 @@ class ExamplesFloodItWorld {
     this.cell13.addLeft(this.cell12);
   }
 
+  // To get the color index of every cell of board1, row by row, which is also the
+  // board of new FloodItWorld(3, 4, new Random(1)): yellow, red, orange / orange,
+  // red, red / orange, yellow, green. The examples of the other classes share it.
+  static int[] exampleColors() {
+    return new int[] { 2, 0, 1, 1, 0, 0, 1, 2, 3 };
+  }
+
+  // To make a world with the example board, with only the origin flooded and the
+  // waterfall finished
+  static FloodItWorld exampleWorld() {
+    FloodItWorld world = new FloodItWorld(3, 4, new Random(1));
+    world.floodCompletely();
+    return world;
+  }
+
   Random r = new Random(1);
 
   ArrayList<Color> colors = new ArrayList<Color>(Arrays.asList(Color.RED, Color.ORANGE,
@@ -877,24 +1653,139 @@ class ExamplesFloodItWorld {
     t.checkExpect(this.floodItWorld, this.floodItWorld);
     this.floodItWorld.onKeyEvent("w");
     t.checkExpect(this.floodItWorld.boardSize, 4);
+    t.checkExpect(this.floodItWorld.board.get(3).size(), 4);
     this.floodItWorld.onKeyEvent("s");
     this.floodItWorld.onKeyEvent("s");
     t.checkExpect(this.floodItWorld.boardSize, 2);
+    t.checkExpect(this.floodItWorld.board.size(), 2);
     this.floodItWorld.onKeyEvent("a");
     t.checkExpect(this.floodItWorld, this.floodItWorld);
     t.checkExpect(this.floodItWorld.numColor, 5);
     this.floodItWorld.onKeyEvent("a");
     this.floodItWorld.onKeyEvent("a");
     t.checkExpect(this.floodItWorld.numColor, 7);
+    t.checkExpect(this.floodItWorld.maxClicks, 8);
     this.floodItWorld.onKeyEvent("d");
     t.checkExpect(this.floodItWorld, this.floodItWorld);
     t.checkExpect(this.floodItWorld.numColor, 6);
+    t.checkExpect(this.floodItWorld.maxClicks, 8);
+    this.floodItWorld.onKeyEvent("d");
+    t.checkExpect(this.floodItWorld.maxClicks, 7);
+    this.floodItWorld.onKeyEvent("a");
     this.floodItWorld.needHelp.equals(false);
     this.floodItWorld.onKeyEvent("h");
     t.checkExpect(this.floodItWorld, this.floodItWorld);
     this.floodItWorld.needHelp.equals(true);
   }
 
+  // To test the growBoard method
+  void testGrowBoard(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.growBoard();
+    t.checkExpect(this.floodItWorld.boardSize, 4);
+    t.checkExpect(this.floodItWorld.board.size(), 4);
+    t.checkExpect(this.floodItWorld.board.get(3).size(), 4);
+    t.checkExpect(this.floodItWorld.board.get(0).get(3).x, 3);
+    t.checkExpect(this.floodItWorld.board.get(3).get(1).y, 3);
+    // The old cells are kept
+    t.checkExpect(this.floodItWorld.board.get(2).get(2).color, Color.GREEN);
+    t.checkExpect(this.floodItWorld.board.get(2).get(2).right,
+        this.floodItWorld.board.get(2).get(3));
+    t.checkExpect(this.floodItWorld.board.get(2).get(3).left,
+        this.floodItWorld.board.get(2).get(2));
+    t.checkExpect(this.floodItWorld.board.get(1).get(3).top,
+        this.floodItWorld.board.get(0).get(3));
+    t.checkExpect(this.floodItWorld.board.get(3).get(3).top,
+        this.floodItWorld.board.get(2).get(3));
+    t.checkExpect(this.floodItWorld.board.get(3).get(3).left,
+        this.floodItWorld.board.get(3).get(2));
+    t.checkExpect(this.floodItWorld.board.get(3).get(3).right, new MtCell());
+    t.checkExpect(this.floodItWorld.board.get(3).get(3).bottom, new MtCell());
+    // The same cells as a board built from scratch would have
+    FloodItWorld rebuilt = new FloodItWorld(3, 4, new Random(1));
+    rebuilt.board = this.floodItWorld.board;
+    rebuilt.boardSize = 4;
+    rebuilt.addNeighbors();
+    t.checkExpect(rebuilt.board, this.floodItWorld.board);
+  }
+
+  // To test the shrinkBoard method
+  void testShrinkBoard(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.shrinkBoard();
+    t.checkExpect(this.floodItWorld.boardSize, 2);
+    t.checkExpect(this.floodItWorld.board.size(), 2);
+    t.checkExpect(this.floodItWorld.board.get(1).size(), 2);
+    t.checkExpect(this.floodItWorld.board.get(0).get(1).right, new MtCell());
+    t.checkExpect(this.floodItWorld.board.get(1).get(0).bottom, new MtCell());
+    t.checkExpect(this.floodItWorld.board.get(1).get(1).bottom, new MtCell());
+    t.checkExpect(this.floodItWorld.board.get(1).get(1).top,
+        this.floodItWorld.board.get(0).get(1));
+    this.floodItWorld.growBoard();
+    this.floodItWorld.growBoard();
+    t.checkExpect(this.floodItWorld.boardSize, 4);
+    t.checkExpect(this.floodItWorld.board.get(0).get(0).color, Color.YELLOW);
+  }
+
+  // To test the unflood method
+  void testUnflood(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.pickColor(Color.RED);
+    this.floodItWorld.floodCompletely();
+    t.checkExpect(this.floodItWorld.countFlooded(), 4);
+    this.floodItWorld.r = new Random(3);
+    this.floodItWorld.unflood();
+    t.checkExpect(this.floodItWorld.countFlooded(), 1);
+    t.checkExpect(this.floodItWorld.board.get(0).get(0).flooded, true);
+    // The cells flooded before get new colors, walking out from the origin
+    Random colors = new Random(3);
+    t.checkExpect(this.floodItWorld.board.get(0).get(0).color,
+        FloodItWorld.COLORS.get(colors.nextInt(4)));
+    t.checkExpect(this.floodItWorld.board.get(0).get(1).color,
+        FloodItWorld.COLORS.get(colors.nextInt(4)));
+    t.checkExpect(this.floodItWorld.board.get(1).get(1).color,
+        FloodItWorld.COLORS.get(colors.nextInt(4)));
+    t.checkExpect(this.floodItWorld.board.get(1).get(2).color,
+        FloodItWorld.COLORS.get(colors.nextInt(4)));
+    // The other cells are kept
+    t.checkExpect(this.floodItWorld.board.get(1).get(0).color, Color.ORANGE);
+    t.checkExpect(this.floodItWorld.board.get(2).get(2).color, Color.GREEN);
+  }
+
+  // To test that resizing after a game does not start the new game with the old
+  // flooded cells, and gives the clicks of the new size
+  void testResizeAfterGame(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.pickColor(Color.RED);
+    this.floodItWorld.floodCompletely();
+    this.floodItWorld.onKeyEvent("w");
+    t.checkExpect(this.floodItWorld.countFlooded(), 1);
+    t.checkExpect(this.floodItWorld.maxClicks, 12);
+    this.floodItWorld.pickColor(Color.ORANGE);
+    this.floodItWorld.floodCompletely();
+    this.floodItWorld.onKeyEvent("s");
+    t.checkExpect(this.floodItWorld.countFlooded(), 1);
+    t.checkExpect(this.floodItWorld.maxClicks, 9);
+  }
+
+  // To test the onKeyEvent method when the board is regenerated on resizing
+  void testOnKeyEventRegenerate(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.regenerateOnResize = true;
+    this.floodItWorld.onKeyEvent("w");
+    t.checkExpect(this.floodItWorld.boardSize, 4);
+    t.checkExpect(this.floodItWorld.board.get(3).size(), 4);
+    this.floodItWorld.onKeyEvent("s");
+    this.floodItWorld.onKeyEvent("s");
+    t.checkExpect(this.floodItWorld.boardSize, 2);
+    t.checkExpect(this.floodItWorld.board.size(), 2);
+  }
+
   // tests the getCell method
   void testGetCell(Tester t) {
     this.InitCell();
@@ -1010,28 +1901,265 @@ class ExamplesFloodItWorld {
 
   }
   
-  // To test the onTick
+  // To test the onTick, with one second passing before every tick
   void testOnTick(Tester t) {
     this.InitCell();
     this.InitNeighbors();
+    ManualTimeSource time = new ManualTimeSource();
+    this.floodItWorld.scheduler = new FrameScheduler(time);
+    time.advance(FrameScheduler.SECOND);
     this.floodItWorld.onTick();
     t.checkExpect(this.floodItWorld.clock, 1);
     t.checkExpect(this.floodItWorld.board.get(0).get(0).color, Color.YELLOW);
+    time.advance(FrameScheduler.SECOND);
     this.floodItWorld.onTick();
     t.checkExpect(this.floodItWorld.clock, 2);
     t.checkExpect(this.floodItWorld.board.get(2).get(2).color, Color.GREEN);
+    time.advance(FrameScheduler.SECOND);
     this.floodItWorld.onTick();
+    time.advance(FrameScheduler.SECOND);
     this.floodItWorld.onTick();
+    time.advance(FrameScheduler.SECOND);
     this.floodItWorld.onTick();
     t.checkExpect(this.floodItWorld.clock, 5);
     t.checkExpect(this.floodItWorld.board.get(1).get(1).color, Color.RED);
   }
 
+  // To test that the clock follows the time source however often it ticks
+  void testOnTickClock(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    ManualTimeSource time = new ManualTimeSource();
+    this.floodItWorld.scheduler = new FrameScheduler(time);
+    // Twenty five ticks a second
+    for (int tick = 0; tick < 75; tick++) {
+      time.advance(FrameScheduler.SECOND / 25);
+      this.floodItWorld.onTick();
+    }
+    t.checkExpect(this.floodItWorld.clock, 3);
+    // One late tick
+    time.advance(FrameScheduler.SECOND * 4);
+    this.floodItWorld.onTick();
+    t.checkExpect(this.floodItWorld.clock, 7);
+    // A reset restarts the clock
+    this.floodItWorld.onKeyEvent("r");
+    time.advance(FrameScheduler.SECOND / 2);
+    this.floodItWorld.onTick();
+    t.checkExpect(this.floodItWorld.clock, 0);
+  }
+
+  // To test that the animation runs the steps that are due together
+  void testOnTickWaterfall(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    ManualTimeSource time = new ManualTimeSource();
+    this.floodItWorld.scheduler = new FrameScheduler(time);
+    this.floodItWorld.onMousePressed(new Posn(400, 150));
+    // No time passed, so nothing is flooded yet, however many frames are drawn
+    this.floodItWorld.onTick();
+    this.floodItWorld.makeScene();
+    this.floodItWorld.makeScene();
+    t.checkExpect(this.floodItWorld.board.get(0).get(1).flooded, false);
+    t.checkExpect(this.floodItWorld.board.get(1).get(1).flooded, false);
+    time.advance(FrameScheduler.SECOND);
+    this.floodItWorld.onTick();
+    t.checkExpect(this.floodItWorld.board.get(1).get(1).flooded, true);
+    t.checkExpect(this.floodItWorld.board.get(1).get(2).color, Color.RED);
+  }
+
+  // To test that queued input is handled on the next tick
+  void testQueuedInput(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.queueInput = true;
+    this.floodItWorld.onMousePressed(new Posn(400, 150));
+    this.floodItWorld.onKeyEvent("h");
+    t.checkExpect(this.floodItWorld.numClicks, 0);
+    t.checkExpect(this.floodItWorld.input.events.size(), 2);
+    this.floodItWorld.onTick();
+    t.checkExpect(this.floodItWorld.numClicks, 1);
+    t.checkExpect(this.floodItWorld.board.get(0).get(0).color, Color.RED);
+    t.checkExpect(this.floodItWorld.needHelp, true);
+    t.checkExpect(this.floodItWorld.input.events.size(), 0);
+  }
+
+  // To test that repeated clicks on one color count once
+  void testQueuedClicks(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.queueInput = true;
+    this.floodItWorld.onMousePressed(new Posn(400, 150));
+    this.floodItWorld.onMousePressed(new Posn(300, 300));
+    this.floodItWorld.onMousePressed(new Posn(450, 310));
+    this.floodItWorld.onMousePressed(new Posn(150, 500));
+    this.floodItWorld.onMousePressed(new Posn(200, 10000));
+    this.floodItWorld.onTick();
+    // Red three times, then orange
+    t.checkExpect(this.floodItWorld.numClicks, 2);
+    t.checkExpect(this.floodItWorld.board.get(0).get(0).color, Color.ORANGE);
+    // The clicks are not flooded one by one, only the last color is spread
+    t.checkExpect(this.floodItWorld.board.get(1).get(2).flooded, false);
+  }
+
+  // To test that size and color changes start one new game
+  void testQueuedKeys(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.queueInput = true;
+    Cell origin = this.floodItWorld.board.get(0).get(0);
+    this.floodItWorld.onKeyEvent("w");
+    this.floodItWorld.onKeyEvent("w");
+    this.floodItWorld.onKeyEvent("w");
+    this.floodItWorld.onKeyEvent("s");
+    this.floodItWorld.onKeyEvent("h");
+    this.floodItWorld.onKeyEvent("h");
+    this.floodItWorld.onTick();
+    t.checkExpect(this.floodItWorld.boardSize, 5);
+    t.checkExpect(this.floodItWorld.board.get(4).size(), 5);
+    t.checkExpect(this.floodItWorld.maxClicks, 14);
+    t.checkExpect(this.floodItWorld.needHelp, false);
+    // Only the size changed, so the cells were kept
+    t.checkExpect(this.floodItWorld.board.get(0).get(0) == origin, true);
+    this.floodItWorld.onKeyEvent("a");
+    this.floodItWorld.onKeyEvent("a");
+    this.floodItWorld.onKeyEvent("a");
+    this.floodItWorld.onKeyEvent("a");
+    this.floodItWorld.onKeyEvent("a");
+    this.floodItWorld.onKeyEvent("d");
+    this.floodItWorld.onTick();
+    t.checkExpect(this.floodItWorld.numColor, 7);
+    t.checkExpect(this.floodItWorld.board.get(0).get(0) == origin, false);
+  }
+
+  // To test that a click after a new game applies to the new game
+  void testQueuedClickAfterReset(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.boards = new BoardSupplier(new Random(2));
+    this.floodItWorld.queueInput = true;
+    this.floodItWorld.onMousePressed(new Posn(400, 150));
+    this.floodItWorld.onKeyEvent("r");
+    this.floodItWorld.onMousePressed(new Posn(400, 150));
+    this.floodItWorld.onTick();
+    this.floodItWorld.awaitBoard();
+    this.floodItWorld.onTick();
+    // The reset clears the click before it, and the click after it picks the color
+    // of the new board
+    t.checkExpect(this.floodItWorld.numClicks, 1);
+    t.checkExpect(this.floodItWorld.board.get(0).get(0).color,
+        new BoardBuffer(3, 4, new Random(2)).colorAt(1, 0));
+  }
+
+  // To test the startGame method
+  void testStartGame(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    this.floodItWorld.numClicks = 3;
+    this.floodItWorld.startGame(4, 4, false);
+    t.checkExpect(this.floodItWorld.boardSize, 4);
+    t.checkExpect(this.floodItWorld.numClicks, 0);
+    t.checkExpect(this.floodItWorld.maxClicks, 12);
+    t.checkExpect(this.floodItWorld.board.get(2).get(2).color, Color.GREEN);
+    this.floodItWorld.startGame(2, 3, false);
+    t.checkExpect(this.floodItWorld.boardSize, 2);
+    t.checkExpect(this.floodItWorld.numColor, 3);
+    t.checkExpect(this.floodItWorld.board.size(), 2);
+  }
+
+  // To test the loadBoard method
+  void testLoadBoard(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    Cell origin = this.floodItWorld.board.get(0).get(0);
+    this.floodItWorld.numClicks = 3;
+    this.floodItWorld.loadBoard(5, new int[] { 1, 1, 0, 0, 1, 2, 3, 4, 4 });
+    t.checkExpect(this.floodItWorld.board.get(0).get(0) == origin, true);
+    t.checkExpect(this.floodItWorld.numColor, 5);
+    t.checkExpect(this.floodItWorld.numClicks, 0);
+    t.checkExpect(this.floodItWorld.maxClicks, 9);
+    t.checkExpect(this.floodItWorld.countFlooded(), 3);
+    t.checkExpect(this.floodItWorld.board.get(1).get(1).color, Color.ORANGE);
+    t.checkExpect(this.floodItWorld.board.get(2).get(2).color, Color.CYAN);
+  }
+
+  // To test that the screens and text are only drawn again when they change
+  void testSceneCache(Tester t) {
+    this.InitCell();
+    this.InitNeighbors();
+    WorldScene help = this.floodItWorld.help();
+    t.checkExpect(this.floodItWorld.help() == help, true);
+    t.checkExpect(help, this.floodItWorld.drawHelp());
+    WorldScene winner = this.floodItWorld.winner();
+    t.checkExpect(this.floodItWorld.winner() == winner, true);
+    this.floodItWorld.numClicks = 4;
+    t.checkExpect(this.floodItWorld.winner() == winner, false);
+    t.checkExpect(this.floodItWorld.winner(), this.floodItWorld.drawWinner());
+    t.checkExpect(this.floodItWorld.loser(), this.floodItWorld.drawLoser());
+    TextImage counter = this.floodItWorld.clickCounter();
+    TextImage timer = this.floodItWorld.clockTimer();
+    t.checkExpect(this.floodItWorld.clickCounter() == counter, true);
+    this.floodItWorld.numClicks = 5;
+    t.checkExpect(this.floodItWorld.clickCounter() == counter, false);
+    t.checkExpect(this.floodItWorld.clickCounter(),
+        new TextImage("5/7", 25, FontStyle.BOLD, Color.BLACK));
+    t.checkExpect(this.floodItWorld.clockTimer() == timer, true);
+    this.floodItWorld.clock = 3;
+    t.checkExpect(this.floodItWorld.clockTimer(),
+        new TextImage("Time in seconds: 3", 25, FontStyle.BOLD, Color.BLACK));
+  }
+
+  // To test the stepsDue and elapsedSeconds methods
+  void testStepsDue(Tester t) {
+    ManualTimeSource time = new ManualTimeSource();
+    FrameScheduler scheduler = new FrameScheduler(time, 100, 5, 1000, 2);
+    t.checkExpect(scheduler.stepsDue(), 0);
+    time.advance(250);
+    t.checkExpect(scheduler.stepsDue(), 2);
+    time.advance(50);
+    t.checkExpect(scheduler.stepsDue(), 1);
+    time.advance(10000);
+    t.checkExpect(scheduler.stepsDue(), 5);
+    t.checkExpect(scheduler.stepsDue(), 0);
+    time.advance(FrameScheduler.SECOND * 2);
+    t.checkExpect(scheduler.elapsedSeconds(), 2);
+    scheduler.restart();
+    t.checkExpect(scheduler.elapsedSeconds(), 0);
+  }
+
+  // To test the shouldRender, requestRender, startRender, and finishRender methods
+  void testShouldRender(Tester t) {
+    ManualTimeSource time = new ManualTimeSource();
+    FrameScheduler scheduler = new FrameScheduler(time, 100, 5, 1000, 2);
+    t.checkExpect(scheduler.shouldRender(), true);
+    long start = scheduler.startRender();
+    time.advance(500);
+    scheduler.finishRender(start);
+    t.checkExpect(scheduler.shouldRender(), true);
+    // A slow frame skips at most two frames in a row
+    start = scheduler.startRender();
+    time.advance(5000);
+    scheduler.finishRender(start);
+    t.checkExpect(scheduler.shouldRender(), false);
+    t.checkExpect(scheduler.shouldRender(), false);
+    t.checkExpect(scheduler.shouldRender(), true);
+    t.checkExpect(scheduler.shouldRender(), false);
+    // Input is shown on the next frame
+    scheduler.requestRender();
+    t.checkExpect(scheduler.shouldRender(), true);
+  }
+
   // runs the game by creating a world and calling bigBang
   void testFloodIt(Tester t) {
     this.InitCell();
     this.InitNeighbors();
     FloodItWorld floodItWorld = new FloodItWorld(5, 6);
-    floodItWorld.bigBang(700, 700, 1);
+    try {
+      floodItWorld.store = SessionStore.open(new File("floodit-scores"));
+      floodItWorld.store.closeOnExit();
+    }
+    catch (IOException e) {
+      System.err.println("Finished games will not be saved: " + e.getMessage());
+    }
+    floodItWorld.bigBang(700, 700, 1.0 / 30);
   }
 }
\ No newline at end of file
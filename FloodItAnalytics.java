@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.awt.Color;
+import javalib.worldimages.*;
+import tester.Tester;
+
+// Represents how far every region of a board is from the flooded region, kept up
+// to date as the flooded region grows. A move can only bring regions closer, so it
+// only walks out from the regions it floods, through the regions that get closer.
+class FloodAnalytics {
+  // The regions of the board when the analytics started
+  RegionGraph graph;
+  // The number of moves from the flooded region to every region, 0 if flooded
+  int[] depth;
+  // The number of regions at every depth
+  int[] atDepth;
+  // The regions at every depth, as linked lists so that a region can move to
+  // another depth in constant time
+  int[] firstAtDepth;
+  int[] nextAtDepth;
+  int[] previousAtDepth;
+  // The greatest depth of any region
+  int maxDepth;
+  // The number of regions of every color that are not flooded
+  int[] remaining;
+  // The number of colors that still have regions that are not flooded
+  int colorsLeft;
+  // The color index of the flooded region
+  int color;
+  // The regions waiting to be walked
+  int[] queue;
+
+  // To start the analytics with region 0 of the given graph flooded
+  FloodAnalytics(RegionGraph graph) {
+    this(graph, FloodAnalytics.originOnly(graph), graph.regionColor[0]);
+  }
+
+  // To start the analytics with the given regions of the given graph flooded, in
+  // the given color
+  FloodAnalytics(RegionGraph graph, boolean[] flooded, int color) {
+    int regions = graph.size();
+    this.graph = graph;
+    this.depth = new int[regions];
+    this.atDepth = new int[regions];
+    this.firstAtDepth = new int[regions];
+    this.nextAtDepth = new int[regions];
+    this.previousAtDepth = new int[regions];
+    this.remaining = new int[graph.numColor];
+    this.queue = new int[regions];
+    this.color = color;
+    Arrays.fill(this.firstAtDepth, -1);
+    Arrays.fill(this.depth, regions);
+    this.maxDepth = 0;
+    int size = 0;
+    for (int region = 0; region < regions; region++) {
+      if (flooded[region]) {
+        this.place(region, 0);
+        this.queue[size++] = region;
+      }
+      else {
+        if (this.remaining[graph.regionColor[region]] == 0) {
+          this.colorsLeft++;
+        }
+        this.remaining[graph.regionColor[region]]++;
+      }
+    }
+    // Walk out from the flooded regions
+    this.spread(size);
+  }
+
+  // Constructor used by copy
+  FloodAnalytics(FloodAnalytics analytics) {
+    this.graph = analytics.graph;
+    this.depth = analytics.depth.clone();
+    this.atDepth = analytics.atDepth.clone();
+    this.firstAtDepth = analytics.firstAtDepth.clone();
+    this.nextAtDepth = analytics.nextAtDepth.clone();
+    this.previousAtDepth = analytics.previousAtDepth.clone();
+    this.maxDepth = analytics.maxDepth;
+    this.remaining = analytics.remaining.clone();
+    this.colorsLeft = analytics.colorsLeft;
+    this.color = analytics.color;
+    this.queue = new int[analytics.queue.length];
+  }
+
+  // To get the flooded regions of a graph with only region 0 flooded
+  static boolean[] originOnly(RegionGraph graph) {
+    boolean[] flooded = new boolean[graph.size()];
+    flooded[0] = true;
+    return flooded;
+  }
+
+  // To copy these analytics, so that a search can try a move without losing them
+  FloodAnalytics copy() {
+    return new FloodAnalytics(this);
+  }
+
+  // To start the analytics for the given world
+  static FloodAnalytics of(FloodItWorld world) {
+    return new FloodAnalytics(RegionGraph.of(world));
+  }
+
+  // To flood with the given color, producing the number of regions it floods
+  // EFFECT: Moves the regions that get closer to their new depths
+  int move(int newColor) {
+    int absorbed = 0;
+    if (newColor != this.color && this.maxDepth > 0) {
+      // The regions the move floods are the ones of its color one move away
+      int region = this.firstAtDepth[1];
+      while (region >= 0) {
+        int next = this.nextAtDepth[region];
+        if (this.graph.regionColor[region] == newColor) {
+          this.queue[absorbed++] = region;
+        }
+        region = next;
+      }
+      for (int i = 0; i < absorbed; i++) {
+        this.place(this.queue[i], 0);
+      }
+      if (absorbed > 0) {
+        this.remaining[newColor] -= absorbed;
+        if (this.remaining[newColor] == 0) {
+          this.colorsLeft--;
+        }
+      }
+      this.spread(absorbed);
+      while (this.maxDepth > 0 && this.atDepth[this.maxDepth] == 0) {
+        this.maxDepth--;
+      }
+    }
+    this.color = newColor;
+    return absorbed;
+  }
+
+  // To walk out from the regions in the queue, in order of depth, moving every
+  // region reached to a smaller depth than it had. Each region gets closer at most
+  // once, so the queue never holds more than every region.
+  // EFFECT: Mutates the depths and the queue
+  void spread(int size) {
+    int head = 0;
+    int tail = size;
+    while (head < tail) {
+      int region = this.queue[head++];
+      int next = this.depth[region] + 1;
+      for (int i = this.graph.neighborStart[region]; i < this.graph.neighborStart[region + 1];
+          i++) {
+        int neighbor = this.graph.neighbors[i];
+        if (next < this.depth[neighbor]) {
+          this.place(neighbor, next);
+          this.queue[tail++] = neighbor;
+        }
+      }
+    }
+  }
+
+  // To move the given region to the given depth
+  // EFFECT: Mutates the depth, the counts, and the lists of regions at every depth
+  void place(int region, int newDepth) {
+    int old = this.depth[region];
+    if (old < this.depth.length) {
+      this.atDepth[old]--;
+      int previous = this.previousAtDepth[region];
+      int next = this.nextAtDepth[region];
+      if (previous >= 0) {
+        this.nextAtDepth[previous] = next;
+      }
+      else {
+        this.firstAtDepth[old] = next;
+      }
+      if (next >= 0) {
+        this.previousAtDepth[next] = previous;
+      }
+    }
+    this.depth[region] = newDepth;
+    this.atDepth[newDepth]++;
+    this.previousAtDepth[region] = -1;
+    this.nextAtDepth[region] = this.firstAtDepth[newDepth];
+    if (this.firstAtDepth[newDepth] >= 0) {
+      this.previousAtDepth[this.firstAtDepth[newDepth]] = region;
+    }
+    this.firstAtDepth[newDepth] = region;
+    this.maxDepth = Math.max(this.maxDepth, newDepth);
+  }
+
+  // To get the number of regions at the given depth
+  int regionsAtDepth(int depth) {
+    if (depth < 0 || depth > this.maxDepth) {
+      return 0;
+    }
+    return this.atDepth[depth];
+  }
+
+  // To get a region that is farthest from the flooded region
+  int farthestRegion() {
+    return this.firstAtDepth[this.maxDepth];
+  }
+
+  // To get the number of moves from the flooded region to the given cell
+  int depthOfCell(int cell) {
+    return this.depth[this.graph.regionOf[cell]];
+  }
+
+  // To estimate the number of moves left: every color left needs a move, and so
+  // does every step out to the farthest region, so it is never more than the real
+  // number of moves
+  int movesLeft() {
+    return Math.max(this.maxDepth, this.colorsLeft);
+  }
+}
+
+// Represents examples of the flood analytics
+class ExamplesFloodItAnalytics {
+  ExamplesFloodItAnalytics() {
+  }
+
+  FloodItWorld world;
+  FloodAnalytics analytics;
+
+  void InitAnalytics() {
+    this.world = ExamplesFloodItWorld.exampleWorld();
+    this.analytics = FloodAnalytics.of(this.world);
+  }
+
+  // To test the depths of the example board
+  void testDepths(Tester t) {
+    this.InitAnalytics();
+    t.checkExpect(this.analytics.maxDepth, 2);
+    t.checkExpect(this.analytics.regionsAtDepth(0), 1);
+    t.checkExpect(this.analytics.regionsAtDepth(1), 2);
+    t.checkExpect(this.analytics.regionsAtDepth(2), 3);
+    t.checkExpect(this.analytics.regionsAtDepth(3), 0);
+    t.checkExpect(this.analytics.depthOfCell(5), 1);
+    t.checkExpect(this.analytics.depthOfCell(8), 2);
+    t.checkExpect(this.analytics.depth[this.analytics.farthestRegion()], 2);
+    t.checkExpect(this.analytics.colorsLeft, 4);
+    t.checkExpect(this.analytics.movesLeft(), 4);
+  }
+
+  // To test the move method on the example board
+  void testMove(Tester t) {
+    this.InitAnalytics();
+    t.checkExpect(this.analytics.move(2), 0);
+    t.checkExpect(this.analytics.move(0), 1);
+    t.checkExpect(this.analytics.maxDepth, 1);
+    t.checkExpect(this.analytics.regionsAtDepth(0), 2);
+    t.checkExpect(this.analytics.regionsAtDepth(1), 4);
+    t.checkExpect(this.analytics.depthOfCell(8), 1);
+    t.checkExpect(this.analytics.colorsLeft, 3);
+    t.checkExpect(this.analytics.movesLeft(), 3);
+    t.checkExpect(this.analytics.move(1), 2);
+    t.checkExpect(this.analytics.move(2), 1);
+    t.checkExpect(this.analytics.move(3), 1);
+    t.checkExpect(this.analytics.maxDepth, 0);
+    t.checkExpect(this.analytics.farthestRegion() >= 0, true);
+    t.checkExpect(this.analytics.movesLeft(), 0);
+  }
+
+  // To test that moving keeps the same depths as starting over on the new board
+  void testMatchesRebuild(Tester t) {
+    Random r = new Random(6);
+    for (int game = 0; game < 60; game++) {
+      this.world = new FloodItWorld(2 + r.nextInt(14), 2 + r.nextInt(7), new Random(game));
+      this.world.maxClicks = Integer.MAX_VALUE;
+      this.world.floodCompletely();
+      this.analytics = FloodAnalytics.of(this.world);
+      while (!this.world.isWinner()) {
+        int color = r.nextInt(this.world.numColor);
+        this.analytics.move(color);
+        this.world.pickColor(FloodItWorld.COLORS.get(color));
+        this.world.floodCompletely();
+        FloodAnalytics rebuilt = FloodAnalytics.of(this.world);
+        t.checkExpect(this.analytics.maxDepth, rebuilt.maxDepth);
+        t.checkExpect(this.analytics.colorsLeft, rebuilt.colorsLeft);
+        t.checkExpect(this.analytics.movesLeft(), rebuilt.movesLeft());
+        for (int cell = 0; cell < this.world.boardSize * this.world.boardSize; cell++) {
+          t.checkExpect(this.analytics.depthOfCell(cell), rebuilt.depthOfCell(cell));
+        }
+        for (int depth = 1; depth <= rebuilt.maxDepth; depth++) {
+          t.checkExpect(this.analytics.regionsAtDepth(depth), rebuilt.regionsAtDepth(depth));
+        }
+      }
+    }
+  }
+
+  // To test the estimate shown under the click counter
+  void testMovesLeftText(Tester t) {
+    this.InitAnalytics();
+    this.world.showMovesLeft = true;
+    t.checkExpect(this.world.movesLeftText(),
+        new TextImage("At least 4 moves to go", 20, FontStyle.BOLD, Color.BLACK));
+    FloodAnalytics started = this.world.analytics;
+    this.world.pickColor(Color.RED);
+    t.checkExpect(this.world.analytics == started, true);
+    t.checkExpect(this.world.movesLeftText(),
+        new TextImage("At least 3 moves to go", 20, FontStyle.BOLD, Color.BLACK));
+    this.world.onKeyEvent("r");
+    t.checkExpect(this.world.analytics, null);
+    this.world.floodCompletely();
+    t.checkExpect(this.world.movesLeftText(), new TextImage("At least "
+        + FloodAnalytics.of(this.world).movesLeft() + " moves to go", 20, FontStyle.BOLD,
+        Color.BLACK));
+  }
+}
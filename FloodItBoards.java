@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.awt.Color;
+import javalib.impworld.*;
+import javalib.worldimages.*;
+import tester.Tester;
+
+// Represents a new board as the color index of every cell, which is quick to make
+// and to draw, and the cells made from those colors
+class BoardBuffer {
+  // Size of the board (Represents both the number of rows and columns)
+  int boardSize;
+  // Number of colors
+  int numColor;
+  // The color index of every cell, row by row
+  int[] colors;
+  // The cells of the board, built in the background
+  Future<ArrayList<ArrayList<Cell>>> cells;
+
+  // To make a random board, with its colors chosen in the same order as
+  // FloodItWorld.initBoard chooses them
+  BoardBuffer(int boardSize, int numColor, Random r) {
+    this.boardSize = boardSize;
+    this.numColor = numColor;
+    this.colors = new int[boardSize * boardSize];
+    for (int cell = 0; cell < this.colors.length; cell++) {
+      this.colors[cell] = r.nextInt(numColor);
+    }
+    this.cells = null;
+  }
+
+  // To get the color of the cell in the given column and row
+  Color colorAt(int x, int y) {
+    return FloodItWorld.COLORS.get(this.colors[y * this.boardSize + x]);
+  }
+
+  // To build the cells of the board, connected to their neighbors, with the top
+  // left cell flooded
+  ArrayList<ArrayList<Cell>> build() {
+    ArrayList<ArrayList<Cell>> board = new ArrayList<ArrayList<Cell>>();
+    for (int y = 0; y < this.boardSize; y++) {
+      ArrayList<Cell> row = new ArrayList<Cell>();
+      for (int x = 0; x < this.boardSize; x++) {
+        row.add(new Cell(x, y, this.colorAt(x, y), x == 0 && y == 0));
+      }
+      board.add(row);
+    }
+    FloodItWorld.addNeighbors(board, this.boardSize);
+    return board;
+  }
+
+  // To determine if the cells have been built
+  boolean isReady() {
+    return this.cells.isDone();
+  }
+
+  // To wait for the cells, building them here if the background thread could not
+  ArrayList<ArrayList<Cell>> await() {
+    try {
+      return this.cells.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return this.build();
+    }
+    catch (ExecutionException e) {
+      return this.build();
+    }
+  }
+}
+
+// Represents a background thread that builds the next board before it is needed,
+// so that starting a new game does not wait for the cells to be made
+class BoardSupplier {
+  // Builds the cells of the boards
+  ExecutorService builder;
+  // Chooses the colors of the boards, only used by the game thread
+  Random r;
+  // The board being built for the next new game, or null
+  BoardBuffer next;
+
+  BoardSupplier(Random r) {
+    this.builder = Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "FloodIt boards");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.r = r;
+    this.next = null;
+  }
+
+  // To get a new board of the given size and number of colors, whose cells are
+  // built or being built, and start building the one after it. A next board of
+  // another size is cancelled so the builder does not spend time on it.
+  // EFFECT: Replaces the next board
+  BoardBuffer take(int boardSize, int numColor) {
+    BoardBuffer board = this.next;
+    if (board == null || board.boardSize != boardSize || board.numColor != numColor) {
+      if (board != null) {
+        board.cells.cancel(false);
+      }
+      board = this.prepare(boardSize, numColor);
+    }
+    this.next = this.prepare(boardSize, numColor);
+    return board;
+  }
+
+  // To choose the colors of a new board and start building its cells
+  BoardBuffer prepare(int boardSize, int numColor) {
+    BoardBuffer board = new BoardBuffer(boardSize, numColor, this.r);
+    board.cells = this.builder.submit(() -> board.build());
+    return board;
+  }
+}
+
+// Represents examples of making boards in the background
+class ExamplesFloodItBoards {
+  ExamplesFloodItBoards() {
+  }
+
+  // To test the constructor and build method of BoardBuffer
+  void testBoardBuffer(Tester t) {
+    BoardBuffer buffer = new BoardBuffer(3, 4, new Random(1));
+    FloodItWorld world = new FloodItWorld(3, 4, new Random(1));
+    t.checkExpect(buffer.colors, MultiFloodEngine.colorsOf(world));
+    t.checkExpect(buffer.colorAt(2, 1), Color.RED);
+    ArrayList<ArrayList<Cell>> board = buffer.build();
+    t.checkExpect(board.size(), 3);
+    t.checkExpect(board.get(0).get(0).flooded, true);
+    t.checkExpect(board.get(1).get(1).flooded, false);
+    t.checkExpect(board.get(1).get(2).color, Color.RED);
+    t.checkExpect(board.get(1).get(1).left == board.get(1).get(0), true);
+    t.checkExpect(board.get(1).get(1).bottom == board.get(2).get(1), true);
+    t.checkExpect(board.get(2).get(2).right, new MtCell());
+  }
+
+  // To test the take method of BoardSupplier
+  void testBoardSupplier(Tester t) {
+    BoardSupplier boards = new BoardSupplier(new Random(1));
+    BoardBuffer first = boards.take(4, 3);
+    BoardBuffer next = boards.next;
+    t.checkExpect(first.await().size(), 4);
+    t.checkExpect(boards.take(4, 3) == next, true);
+    t.checkExpect(boards.next == next, false);
+    BoardBuffer stale = boards.next;
+    BoardBuffer bigger = boards.take(5, 3);
+    t.checkExpect(stale.cells.isCancelled() || stale.cells.isDone(), true);
+    t.checkExpect(bigger.boardSize, 5);
+    t.checkExpect(bigger.await().get(4).size(), 5);
+    t.checkExpect(boards.next.boardSize, 5);
+  }
+
+  // To test that a board is drawn from its colors until its cells are built, and
+  // that the game waits for them
+  void testPendingBoard(Tester t) {
+    FloodItWorld world = new FloodItWorld(3, 4, new Random(1));
+    BoardBuffer buffer = new BoardBuffer(3, 4, new Random(7));
+    CompletableFuture<ArrayList<ArrayList<Cell>>> cells =
+        new CompletableFuture<ArrayList<ArrayList<Cell>>>();
+    buffer.cells = cells;
+    world.pending = buffer;
+    t.checkExpect(world.boardReady(), false);
+    WorldScene early = world.drawScene();
+    world.onTick();
+    t.checkExpect(world.pending == buffer, true);
+    cells.complete(buffer.build());
+    t.checkExpect(world.boardReady(), true);
+    t.checkExpect(world.pending, null);
+    t.checkExpect(MultiFloodEngine.colorsOf(world), buffer.colors);
+    t.checkExpect(world.drawScene(), early);
+  }
+
+  // To test that input waits in the queue while the cells of a new board are
+  // being built, instead of holding up the game thread
+  void testPendingInput(Tester t) throws Exception {
+    FloodItWorld world = new FloodItWorld(3, 4, new Random(1));
+    BoardBuffer buffer = new BoardBuffer(3, 4, new Random(7));
+    CompletableFuture<ArrayList<ArrayList<Cell>>> cells =
+        new CompletableFuture<ArrayList<ArrayList<Cell>>>();
+    buffer.cells = cells;
+    world.pending = buffer;
+    world.onKeyEvent("h");
+    world.onMousePressed(new Posn(150, 300));
+    t.checkExpect(world.needHelp, false);
+    t.checkExpect(world.input.events.size(), 2);
+    world.onTick();
+    t.checkExpect(world.input.events.size(), 2);
+    cells.complete(buffer.build());
+    world.onTick();
+    t.checkExpect(world.needHelp, true);
+    t.checkExpect(world.numClicks, 1);
+    t.checkExpect(world.board.get(0).get(0).color, buffer.colorAt(0, 1));
+    t.checkExpect(world.input.events.size(), 0);
+
+    // A click after a new game in the same batch waits for the new cells
+    world.boards = new BoardSupplier(new Random(2));
+    CountDownLatch gate = new CountDownLatch(1);
+    world.boards.builder.submit(() -> {
+      gate.await();
+      return null;
+    });
+    world.queueInput = true;
+    world.onKeyEvent("r");
+    world.onMousePressed(new Posn(400, 150));
+    world.onTick();
+    t.checkExpect(world.numClicks, 0);
+    t.checkExpect(world.input.events.size(), 1);
+    BoardBuffer next = world.pending;
+    gate.countDown();
+    next.cells.get();
+    world.onTick();
+    t.checkExpect(world.numClicks, 1);
+    t.checkExpect(world.board.get(0).get(0).color, next.colorAt(1, 0));
+  }
+
+  // To test that a new game takes a board made in the background
+  void testRegenerate(Tester t) {
+    FloodItWorld world = new FloodItWorld(4, 5, new Random(1));
+    world.boards = new BoardSupplier(new Random(2));
+    world.onKeyEvent("r");
+    world.awaitBoard();
+    t.checkExpect(MultiFloodEngine.colorsOf(world), new BoardBuffer(4, 5, new Random(2)).colors);
+    t.checkExpect(world.board.get(0).get(0).flooded, true);
+    t.checkExpect(world.boards.next.boardSize, 4);
+    world.onKeyEvent("a");
+    world.awaitBoard();
+    t.checkExpect(world.numColor, 6);
+    t.checkExpect(world.boards.next.numColor, 6);
+  }
+}
@@ -0,0 +1,512 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.awt.Color;
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+// Represents a player of flood it. A bot plays by clicking the board, so its
+// moves are handled by FloodItWorld.onMousePressed like the moves of a person.
+interface IFloodBot {
+  // To get ready for a new game, using the given seed for any random choices
+  void newGame(long seed);
+
+  // To choose where to click on the given board, which has not been won yet
+  Posn click(FloodItWorld world);
+}
+
+// Represents a bot that chooses a color, and clicks a cell of that color
+abstract class AColorBot implements IFloodBot {
+  // To get ready for a new game
+  public void newGame(long seed) {
+    // Only random bots use the seed
+  }
+
+  // To choose the color index to flood the given board with
+  abstract int pick(FloodItWorld world);
+
+  // To choose where to click on the given board: the middle of a cell of the
+  // chosen color
+  public Posn click(FloodItWorld world) {
+    Color color = FloodItWorld.COLORS.get(this.pick(world));
+    int cellSize = 500 / world.boardSize;
+    for (ArrayList<Cell> row : world.board) {
+      for (Cell cell : row) {
+        if (!cell.flooded && cell.color.equals(color)) {
+          return new Posn(100 + cell.x * cellSize + cellSize / 2,
+              100 + cell.y * cellSize + cellSize / 2);
+        }
+      }
+    }
+    // No cell has the color, so click the origin, which wastes the click
+    return new Posn(100 + cellSize / 2, 100 + cellSize / 2);
+  }
+}
+
+// Represents a bot that floods the most cells it can with every move
+class GreedyCellsBot extends AColorBot {
+  MoveGainEvaluator evaluator = new MoveGainEvaluator();
+
+  // To choose the color that floods the most cells
+  int pick(FloodItWorld world) {
+    return this.evaluator.evaluate(world).bestByCells();
+  }
+}
+
+// Represents a bot that removes a color from the board whenever it can
+class GreedyColorsBot extends AColorBot {
+  MoveGainEvaluator evaluator = new MoveGainEvaluator();
+
+  // To choose a color that removes a color from the board, or else the color that
+  // floods the most cells
+  int pick(FloodItWorld world) {
+    return this.evaluator.evaluate(world).bestByColorsRemoved();
+  }
+}
+
+// Represents a bot that picks any color that floods something
+class RandomBot extends AColorBot {
+  MoveGainEvaluator evaluator = new MoveGainEvaluator();
+  Random r = new Random();
+
+  // To get ready for a new game, choosing colors from the given seed
+  public void newGame(long seed) {
+    this.r = new Random(seed);
+  }
+
+  // To choose a random color that floods something
+  int pick(FloodItWorld world) {
+    int[] moves = this.evaluator.evaluate(world).ordered();
+    return moves[this.r.nextInt(moves.length)];
+  }
+}
+
+// Represents a bot that tries every sequence of the given number of moves, and
+// plays the first move of the one that floods the most cells. Solving the board
+// within the sequence beats flooding any number of cells.
+class LookaheadBot extends AColorBot {
+  // The number of moves looked at
+  int depth;
+
+  LookaheadBot(int depth) {
+    this.depth = depth;
+  }
+
+  // To choose the first move of the best sequence, the lowest color on a tie
+  int pick(FloodItWorld world) {
+    FloodSearchState root = new FloodSearchState(RegionGraph.of(world));
+    int best = -1;
+    long bestScore = -1;
+    for (int color = 0; color < world.numColor; color++) {
+      FloodSearchState next = root.copy();
+      int cells = FloodMoves.cellsFlooded(next, color);
+      if (cells > 0) {
+        long score = cells + this.best(next, this.depth - 1);
+        if (score > bestScore) {
+          best = color;
+          bestScore = score;
+        }
+      }
+    }
+    return best;
+  }
+
+  // To get the most cells the given number of moves can flood from the given state
+  long best(FloodSearchState state, int moves) {
+    if (state.isSolved()) {
+      return FloodMoves.solvedBonus(state, moves);
+    }
+    long best = 0;
+    for (int color = 0; color < state.graph.numColor && moves > 0; color++) {
+      FloodSearchState next = state.copy();
+      int cells = FloodMoves.cellsFlooded(next, color);
+      if (cells > 0) {
+        best = Math.max(best, cells + this.best(next, moves - 1));
+      }
+    }
+    return best;
+  }
+}
+
+// Represents a state of a beam search and the move it started with
+class BeamNode {
+  FloodSearchState state;
+  // The first move of the sequence that led here
+  int firstMove;
+  // The number of cells the sequence flooded, including the solved bonus
+  long score;
+
+  BeamNode(FloodSearchState state, int firstMove, long score) {
+    this.state = state;
+    this.firstMove = firstMove;
+    this.score = score;
+  }
+}
+
+// Represents a bot that plays the given number of moves ahead, keeping only the
+// given number of best states after each move, and plays the first move of the
+// best state found
+class BeamBot extends AColorBot {
+  // The number of states kept after each move
+  int width;
+  // The number of moves looked at
+  int depth;
+
+  BeamBot(int width, int depth) {
+    this.width = width;
+    this.depth = depth;
+  }
+
+  // To choose the first move of the best state found, the earliest on a tie
+  int pick(FloodItWorld world) {
+    ArrayList<BeamNode> beam = new ArrayList<BeamNode>();
+    beam.add(new BeamNode(new FloodSearchState(RegionGraph.of(world)), -1, 0));
+    for (int move = 0; move < this.depth; move++) {
+      ArrayList<BeamNode> next = new ArrayList<BeamNode>();
+      for (BeamNode node : beam) {
+        if (node.state.isSolved()) {
+          next.add(node);
+        }
+        else {
+          this.expand(node, this.depth - move - 1, next);
+        }
+      }
+      next.sort((a, b) -> Long.compare(b.score, a.score));
+      beam = new ArrayList<BeamNode>(next.subList(0, Math.min(this.width, next.size())));
+    }
+    return beam.get(0).firstMove;
+  }
+
+  // To add every state one useful move from the given node to the given list
+  // EFFECT: Mutates the list
+  void expand(BeamNode node, int movesLeft, ArrayList<BeamNode> next) {
+    for (int color = 0; color < node.state.graph.numColor; color++) {
+      FloodSearchState state = node.state.copy();
+      int cells = FloodMoves.cellsFlooded(state, color);
+      if (cells > 0) {
+        long score = node.score + cells;
+        if (state.isSolved()) {
+          score += FloodMoves.solvedBonus(state, movesLeft);
+        }
+        next.add(new BeamNode(state, node.firstMove < 0 ? color : node.firstMove, score));
+      }
+    }
+  }
+}
+
+// Helpers for scoring moves on search states
+class FloodMoves {
+  // To play the given color on the given state, producing the number of cells it
+  // floods
+  // EFFECT: Mutates the state
+  static int cellsFlooded(FloodSearchState state, int color) {
+    if (color == state.color) {
+      return 0;
+    }
+    int absorbed = state.move(color);
+    int cells = 0;
+    for (int i = 0; i < absorbed; i++) {
+      cells += state.graph.regionSize[state.absorbedRegions[i]];
+    }
+    return cells;
+  }
+
+  // To score solving the board with the given number of moves to spare, which is
+  // more than flooding every cell with each of the moves it saves
+  static long solvedBonus(FloodSearchState state, int movesLeft) {
+    return (long) state.graph.regionOf.length * (movesLeft + 1);
+  }
+}
+
+// Represents how one bot did in a tournament
+class BotStanding {
+  String name;
+  // The number of games played
+  int games;
+  // The number of games won within maxClicks
+  int wins;
+  // The number of moves played in every game
+  long moves;
+  // The time spent choosing moves
+  long nanos;
+
+  BotStanding(String name) {
+    this.name = name;
+  }
+
+  // To add the results of the given standing of the same bot
+  // EFFECT: Mutates this standing
+  void add(BotStanding other) {
+    this.games += other.games;
+    this.wins += other.wins;
+    this.moves += other.moves;
+    this.nanos += other.nanos;
+  }
+
+  // To show the results
+  public String toString() {
+    return String.format("%-16s %6.1f%% won %7.2f moves %9.1f us/move", this.name,
+        100.0 * this.wins / Math.max(this.games, 1),
+        (double) this.moves / Math.max(this.games, 1),
+        this.nanos / 1000.0 / Math.max(this.moves, 1));
+  }
+}
+
+// Represents the board and the bots of one worker thread of a tournament, reused
+// for every game the thread plays
+class TournamentWorker {
+  FloodItWorld world;
+  IFloodBot[] bots;
+  int[] colors;
+
+  TournamentWorker(BotTournament tournament) {
+    this.world = new FloodItWorld(tournament.boardSize, tournament.numColor, new Random(0));
+    this.bots = new IFloodBot[tournament.bots.size()];
+    for (int bot = 0; bot < this.bots.length; bot++) {
+      this.bots[bot] = tournament.bots.get(bot).get();
+    }
+    this.colors = new int[tournament.boardSize * tournament.boardSize];
+  }
+}
+
+// Represents a range of the games of a tournament, split in half until it is
+// small enough to play, so that idle threads can steal the other halves
+class TournamentGames extends RecursiveTask<BotStanding[]> {
+  // Tasks are Serializable, though the tournament never writes one
+  private static final long serialVersionUID = 1L;
+
+  BotTournament tournament;
+  // The games from first up to last
+  int first;
+  int last;
+
+  TournamentGames(BotTournament tournament, int first, int last) {
+    this.tournament = tournament;
+    this.first = first;
+    this.last = last;
+  }
+
+  // To play the games, producing the standing of every bot
+  protected BotStanding[] compute() {
+    if (this.last - this.first <= 4) {
+      BotStanding[] standings = this.tournament.standings();
+      TournamentWorker worker = this.tournament.borrowWorker();
+      try {
+        for (int game = this.first; game < this.last; game++) {
+          this.tournament.play(worker, game, standings);
+        }
+      }
+      finally {
+        this.tournament.idle.add(worker);
+      }
+      return standings;
+    }
+    int middle = (this.first + this.last) / 2;
+    TournamentGames left = new TournamentGames(this.tournament, this.first, middle);
+    left.fork();
+    BotStanding[] right = new TournamentGames(this.tournament, middle, this.last).compute();
+    BotStanding[] standings = left.join();
+    for (int bot = 0; bot < standings.length; bot++) {
+      standings[bot].add(right[bot]);
+    }
+    return standings;
+  }
+}
+
+// Plays every bot on the same seeded boards and ranks them. Game i is played on
+// the board that new FloodItWorld(boardSize, numColor, new Random(seed + i))
+// makes, and is won by flooding the board within the maxClicks of a new game.
+class BotTournament {
+  // Makes each bot once for every worker thread
+  ArrayList<Supplier<IFloodBot>> bots;
+  ArrayList<String> names;
+  // Size of the boards (Represents both the number of rows and columns)
+  int boardSize;
+  // Number of colors
+  int numColor;
+  long seed;
+  // The boards and bots not being played by a task. A task borrows one and gives
+  // it back, so there are never more than the tasks running at once.
+  ConcurrentLinkedQueue<TournamentWorker> idle;
+
+  BotTournament(int boardSize, int numColor, long seed) {
+    this.bots = new ArrayList<Supplier<IFloodBot>>();
+    this.names = new ArrayList<String>();
+    this.boardSize = boardSize;
+    this.numColor = Math.min(numColor, 8);
+    this.seed = seed;
+    this.idle = new ConcurrentLinkedQueue<TournamentWorker>();
+  }
+
+  // To add a bot to the tournament
+  // EFFECT: Mutates the bots and names
+  BotTournament add(String name, Supplier<IFloodBot> bot) {
+    this.bots.add(bot);
+    this.names.add(name);
+    return this;
+  }
+
+  // To add the greedy, lookahead, beam, and random bots
+  // EFFECT: Mutates the bots and names
+  BotTournament addAll() {
+    return this.add("greedy cells", () -> new GreedyCellsBot())
+        .add("greedy colors", () -> new GreedyColorsBot())
+        .add("lookahead 2", () -> new LookaheadBot(2))
+        .add("lookahead 3", () -> new LookaheadBot(3))
+        .add("beam 8x4", () -> new BeamBot(8, 4))
+        .add("random", () -> new RandomBot());
+  }
+
+  // To get an empty standing for every bot
+  BotStanding[] standings() {
+    BotStanding[] standings = new BotStanding[this.bots.size()];
+    for (int bot = 0; bot < standings.length; bot++) {
+      standings[bot] = new BotStanding(this.names.get(bot));
+    }
+    return standings;
+  }
+
+  // To play the given number of games with every bot on the given pool
+  // EFFECT: Makes new workers, since the bots may have changed
+  BotStanding[] run(ForkJoinPool pool, int games) {
+    this.idle = new ConcurrentLinkedQueue<TournamentWorker>();
+    return pool.invoke(new TournamentGames(this, 0, games));
+  }
+
+  // To take an idle worker, or make one if every worker is busy
+  // EFFECT: Removes the worker from the idle workers
+  TournamentWorker borrowWorker() {
+    TournamentWorker worker = this.idle.poll();
+    if (worker == null) {
+      worker = new TournamentWorker(this);
+    }
+    return worker;
+  }
+
+  // To play the given game with every bot on the board of the given worker
+  // EFFECT: Adds the results to the standings and reuses the worker's board
+  void play(TournamentWorker worker, int game, BotStanding[] standings) {
+    Random r = new Random(this.seed + game);
+    for (int cell = 0; cell < worker.colors.length; cell++) {
+      worker.colors[cell] = r.nextInt(this.numColor);
+    }
+    for (int bot = 0; bot < worker.bots.length; bot++) {
+      FloodItWorld world = worker.world;
+      world.loadBoard(this.numColor, worker.colors);
+      worker.bots[bot].newGame(this.seed + game);
+      long nanos = 0;
+      while (world.numClicks < world.maxClicks && !world.isWinner()) {
+        long start = System.nanoTime();
+        Posn click = worker.bots[bot].click(world);
+        nanos += System.nanoTime() - start;
+        world.onMousePressed(click);
+        world.floodCompletely();
+      }
+      standings[bot].games++;
+      if (world.isWinner()) {
+        standings[bot].wins++;
+      }
+      standings[bot].moves += world.numClicks;
+      standings[bot].nanos += nanos;
+    }
+  }
+
+  // To rank the bots: java BotTournament [games] [size] [colors] [seed]
+  public static void main(String[] args) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int size = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+    int colors = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+    long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+    BotTournament tournament = new BotTournament(size, colors, seed).addAll();
+    long start = System.nanoTime();
+    BotStanding[] standings = tournament.run(ForkJoinPool.commonPool(), games);
+    System.out.println(games + " games of " + size + "x" + size + " with " + colors
+        + " colors in " + (System.nanoTime() - start) / 1000000 + "ms");
+    for (BotStanding standing : standings) {
+      System.out.println(standing);
+    }
+  }
+}
+
+// Represents examples of the bots and the tournament
+class ExamplesFloodItBots {
+  ExamplesFloodItBots() {
+  }
+
+  FloodItWorld world;
+
+  void InitBots() {
+    this.world = ExamplesFloodItWorld.exampleWorld();
+  }
+
+  // To test the click method of AColorBot with the greedy bots
+  void testClick(Tester t) {
+    this.InitBots();
+    t.checkExpect(new GreedyCellsBot().click(this.world), new Posn(349, 183));
+    t.checkExpect(this.world.getCell(new GreedyCellsBot().click(this.world)).color,
+        Color.RED);
+    t.checkExpect(new GreedyColorsBot().pick(this.world), 0);
+    this.world.onMousePressed(new GreedyCellsBot().click(this.world));
+    this.world.floodCompletely();
+    t.checkExpect(this.world.countFlooded(), 4);
+    t.checkExpect(new GreedyColorsBot().pick(this.world), 1);
+  }
+
+  // To test the lookahead and beam bots on the example board, which they solve in
+  // the fewest moves
+  void testLookahead(Tester t) {
+    this.InitBots();
+    t.checkExpect(new LookaheadBot(1).pick(this.world), 0);
+    t.checkExpect(new LookaheadBot(3).pick(this.world), 0);
+    t.checkExpect(new BeamBot(4, 3).pick(this.world), 0);
+    IFloodBot bot = new LookaheadBot(4);
+    while (!this.world.isWinner()) {
+      this.world.onMousePressed(bot.click(this.world));
+      this.world.floodCompletely();
+    }
+    t.checkExpect(this.world.numClicks, 4);
+  }
+
+  // To test that looking one move ahead is the same as the greedy bot
+  void testLookaheadOne(Tester t) {
+    Random r = new Random(4);
+    GreedyCellsBot greedy = new GreedyCellsBot();
+    LookaheadBot lookahead = new LookaheadBot(1);
+    for (int game = 0; game < 30; game++) {
+      this.world = new FloodItWorld(2 + r.nextInt(10), 2 + r.nextInt(7), new Random(game));
+      this.world.floodCompletely();
+      while (!this.world.isWinner()) {
+        t.checkExpect(lookahead.pick(this.world), greedy.pick(this.world));
+        this.world.onMousePressed(greedy.click(this.world));
+        this.world.floodCompletely();
+      }
+    }
+  }
+
+  // To test that the tournament plays the same boards on any number of threads
+  void testTournament(Tester t) {
+    BotTournament tournament = new BotTournament(6, 4, 3).addAll();
+    BotStanding[] one = tournament.run(new ForkJoinPool(1), 40);
+    BotStanding[] two = tournament.run(new ForkJoinPool(2), 40);
+    t.checkExpect(one.length, 6);
+    for (int bot = 0; bot < one.length; bot++) {
+      t.checkExpect(one[bot].games, 40);
+      t.checkExpect(two[bot].wins, one[bot].wins);
+      t.checkExpect(two[bot].moves, one[bot].moves);
+      t.checkExpect(one[bot].wins <= one[bot].games, true);
+    }
+    // The workers are given back when their tasks finish
+    t.checkExpect(tournament.idle.isEmpty(), false);
+    // The game boards are the ones a new world makes from the same seed, played
+    // with the clicks of a new game
+    FloodItWorld first = new FloodItWorld(6, 4, new Random(3));
+    TournamentWorker worker = tournament.borrowWorker();
+    tournament.play(worker, 0, tournament.standings());
+    t.checkExpect(worker.world.maxClicks, 17);
+    t.checkExpect(MultiFloodEngine.colorsOf(first)[35], worker.colors[35]);
+    t.checkExpect(worker.colors, MultiFloodEngine.colorsOf(first));
+  }
+}
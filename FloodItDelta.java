@@ -0,0 +1,378 @@
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.awt.Color;
+import tester.Tester;
+
+// Encodes a flood it board for spectators and remote clients. A full message is
+// sent once, then every move is sent as only the cells it newly flooded and the
+// new color of the origin, so the size of a message follows the size of the move
+// instead of the size of the board. Every message carries the number of moves so
+// far, so a receiver can tell when it missed one and needs a full message again.
+//
+// Full message: 'F', moves, size, number of colors, origin color, the color of
+// every cell (two cells per byte), then the flooded cells as runs
+// Move message: 'D', moves, origin color, then the newly flooded cells as runs
+// Runs: the number of runs, then for each run the number of cells skipped since
+// the end of the last run and the length of the run, all as varints over the
+// cell indices row by row
+class FloodDeltaEncoder {
+  // Size of the board (Represents both the number of rows and columns)
+  int boardSize;
+  // The number of moves encoded so far
+  int moves;
+
+  FloodDeltaEncoder(int boardSize) {
+    this.boardSize = boardSize;
+    this.moves = 0;
+  }
+
+  // To encode the whole board, for receivers that are joining or missed a move
+  byte[] encodeFull(FloodItWorld world) {
+    int[] flooded = new int[this.boardSize * this.boardSize];
+    int count = 0;
+    int index = 0;
+    for (ArrayList<Cell> row : world.board) {
+      for (Cell cell : row) {
+        if (cell.flooded) {
+          flooded[count++] = index;
+        }
+        index++;
+      }
+    }
+    return this.encodeFull(world.numColor, MultiFloodEngine.colorsOf(world), flooded, count);
+  }
+
+  // To encode the whole board from the given number of colors, the color index of
+  // every cell, and the first count of the given flooded cells, as indices row by
+  // row in order. The flooded cells have the color of the origin.
+  byte[] encodeFull(int numColor, int[] colors, int[] flooded, int count) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write('F');
+    writeVarint(out, this.moves);
+    writeVarint(out, this.boardSize);
+    out.write(numColor);
+    out.write(colors[0]);
+    for (int i = 0; i < colors.length; i += 2) {
+      if (i + 1 < colors.length) {
+        out.write((colors[i] << 4) | colors[i + 1]);
+      }
+      else {
+        out.write(colors[i] << 4);
+      }
+    }
+    writeRuns(out, flooded, count);
+    return out.toByteArray();
+  }
+
+  // To encode a move from the new color of the origin and the first count of the
+  // given cells, which are the cells the move newly flooded as indices row by row
+  // EFFECT: Counts the move and sorts the given cells
+  byte[] encodeMove(int originColor, int[] cells, int count) {
+    this.moves++;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write('D');
+    writeVarint(out, this.moves);
+    out.write(originColor);
+    Arrays.sort(cells, 0, count);
+    writeRuns(out, cells, count);
+    return out.toByteArray();
+  }
+
+  // To write the first count of the given cells, sorted, as runs. Only those cells
+  // are walked, once to count the runs and once to write them.
+  // EFFECT: Writes to the given stream
+  static void writeRuns(ByteArrayOutputStream out, int[] cells, int count) {
+    int numRuns = 0;
+    for (int i = 0; i < count; i++) {
+      if (i == 0 || cells[i] != cells[i - 1] + 1) {
+        numRuns++;
+      }
+    }
+    writeVarint(out, numRuns);
+    int end = 0;
+    int i = 0;
+    while (i < count) {
+      int start = i;
+      i++;
+      while (i < count && cells[i] == cells[i - 1] + 1) {
+        i++;
+      }
+      writeVarint(out, cells[start] - end);
+      writeVarint(out, i - start);
+      end = cells[start] + i - start;
+    }
+  }
+
+  // To write a non-negative number seven bits at a time, lowest bits first
+  // EFFECT: Writes to the given stream
+  static void writeVarint(ByteArrayOutputStream out, int value) {
+    while (value >= 0x80) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+}
+
+// Represents a mirrored board rebuilt from the messages of a FloodDeltaEncoder.
+// Flooded cells are not recolored one by one: they all have the origin color.
+class FloodDeltaDecoder {
+  // Size of the board (Represents both the number of rows and columns)
+  int boardSize;
+  // Number of colors
+  int numColor;
+  // The color index of the origin, which is the color of every flooded cell
+  int originColor;
+  // The color index of every cell when it was last not flooded, row by row
+  byte[] colors;
+  // If every cell is flooded, row by row
+  boolean[] flooded;
+  // The number of moves in the messages applied so far, or -1 before the first
+  // full message
+  int moves;
+  // The position of the next byte to read in the message being applied
+  int position;
+
+  FloodDeltaDecoder() {
+    this.boardSize = 0;
+    this.colors = new byte[0];
+    this.flooded = new boolean[0];
+    this.moves = -1;
+  }
+
+  // To apply a full or a move message to the mirrored board, producing false if a
+  // move message came before this one was missed. The board is not changed then,
+  // and the receiver has to ask for a full message again.
+  // EFFECT: Mutates the board to match the one that was encoded
+  boolean apply(byte[] message) {
+    this.position = 1;
+    int messageMoves = this.readVarint(message);
+    if (message[0] == 'F') {
+      this.moves = messageMoves;
+      this.boardSize = this.readVarint(message);
+      this.numColor = message[this.position++];
+      this.originColor = message[this.position++];
+      this.colors = new byte[this.boardSize * this.boardSize];
+      this.flooded = new boolean[this.boardSize * this.boardSize];
+      for (int i = 0; i < this.colors.length; i += 2) {
+        int packed = message[this.position++] & 0xFF;
+        this.colors[i] = (byte) (packed >> 4);
+        if (i + 1 < this.colors.length) {
+          this.colors[i + 1] = (byte) (packed & 0x0F);
+        }
+      }
+    }
+    else if (message[0] == 'D') {
+      if (this.moves < 0 || messageMoves != this.moves + 1) {
+        return false;
+      }
+      this.moves = messageMoves;
+      this.originColor = message[this.position++];
+    }
+    else {
+      throw new IllegalArgumentException("Unknown message type " + message[0]);
+    }
+    int numRuns = this.readVarint(message);
+    int end = 0;
+    for (int i = 0; i < numRuns; i++) {
+      int start = end + this.readVarint(message);
+      end = start + this.readVarint(message);
+      for (int index = start; index < end; index++) {
+        this.flooded[index] = true;
+      }
+    }
+    return true;
+  }
+
+  // To get the color index of the cell at the given logical coordinates
+  int colorAt(int x, int y) {
+    int index = y * this.boardSize + x;
+    if (this.flooded[index]) {
+      return this.originColor;
+    }
+    return this.colors[index];
+  }
+
+  // To read a number written by FloodDeltaEncoder.writeVarint
+  // EFFECT: Advances the position past the number
+  int readVarint(byte[] message) {
+    int value = 0;
+    int shift = 0;
+    int next = message[this.position++];
+    while ((next & 0x80) != 0) {
+      value |= (next & 0x7F) << shift;
+      shift += 7;
+      next = message[this.position++];
+    }
+    return value | (next << shift);
+  }
+}
+
+// Represents examples of delta encoded boards
+class ExamplesFloodItDelta {
+  ExamplesFloodItDelta() {
+  }
+
+  FloodItWorld world;
+  FloodDeltaEncoder encoder;
+  FloodDeltaDecoder decoder;
+  // The cells the decoder has been told are flooded, row by row
+  boolean[] known;
+
+  void InitDelta() {
+    this.world = new FloodItWorld(3, 4, new Random(1));
+    this.encoder = new FloodDeltaEncoder(3);
+    this.decoder = new FloodDeltaDecoder();
+    this.known = new boolean[9];
+  }
+
+  // To encode the whole board of the world
+  // EFFECT: Remembers every flooded cell as known
+  byte[] encodeFull() {
+    this.known = new boolean[this.world.boardSize * this.world.boardSize];
+    int index = 0;
+    for (ArrayList<Cell> row : this.world.board) {
+      for (Cell cell : row) {
+        this.known[index] = cell.flooded;
+        index++;
+      }
+    }
+    return this.encoder.encodeFull(this.world);
+  }
+
+  // To encode the last move of the world from the cells it newly flooded
+  // EFFECT: Remembers the newly flooded cells as known
+  byte[] encodeMove() {
+    int[] cells = new int[this.known.length];
+    int count = 0;
+    int index = 0;
+    for (ArrayList<Cell> row : this.world.board) {
+      for (Cell cell : row) {
+        if (cell.flooded && !this.known[index]) {
+          this.known[index] = true;
+          cells[count++] = index;
+        }
+        index++;
+      }
+    }
+    return this.encoder.encodeMove(FloodItWorld.COLORS.indexOf(this.world.board.get(0)
+        .get(0).color), cells, count);
+  }
+
+  // To check that the mirrored board has the same colors and flooded cells
+  boolean sameBoard(Tester t) {
+    boolean same = true;
+    for (int y = 0; y < this.world.boardSize; y++) {
+      for (int x = 0; x < this.world.boardSize; x++) {
+        Cell cell = this.world.board.get(y).get(x);
+        same = same && t.checkExpect(this.decoder.colorAt(x, y),
+            FloodItWorld.COLORS.indexOf(cell.color))
+            && t.checkExpect(this.decoder.flooded[y * this.world.boardSize + x], cell.flooded);
+      }
+    }
+    return same;
+  }
+
+  // To test the encodeFull method
+  void testEncodeFull(Tester t) {
+    this.InitDelta();
+    // Yellow, red, orange / orange, red, red / orange, yellow, green with only
+    // the origin flooded
+    t.checkExpect(this.encoder.encodeFull(this.world),
+        new byte[] { 'F', 0, 3, 4, 2, 0x20, 0x11, 0x00, 0x12, 0x30, 1, 0, 1 });
+    t.checkExpect(this.decoder.apply(this.encoder.encodeFull(this.world)), true);
+    t.checkExpect(this.decoder.boardSize, 3);
+    t.checkExpect(this.decoder.numColor, 4);
+    t.checkExpect(this.decoder.moves, 0);
+    this.sameBoard(t);
+  }
+
+  // To test the encodeMove method
+  void testEncodeMove(Tester t) {
+    this.InitDelta();
+    this.encodeFull();
+    t.checkExpect(this.encodeMove(), new byte[] { 'D', 1, 2, 0 });
+    this.world.pickColor(Color.RED);
+    this.world.floodCompletely();
+    // Cell 1 and the run of cells 4 and 5 were flooded
+    t.checkExpect(this.encodeMove(), new byte[] { 'D', 2, 0, 2, 1, 1, 2, 2 });
+    // The cells do not have to be given in order
+    t.checkExpect(this.encoder.encodeMove(0, new int[] { 5, 1, 4, 8 }, 3),
+        new byte[] { 'D', 3, 0, 2, 1, 1, 2, 2 });
+  }
+
+  // To test the apply method with a sequence of moves
+  void testApply(Tester t) {
+    this.InitDelta();
+    this.decoder.apply(this.encodeFull());
+    Color[] moves = { Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN };
+    for (Color color : moves) {
+      this.world.pickColor(color);
+      this.world.floodCompletely();
+      t.checkExpect(this.decoder.apply(this.encodeMove()), true);
+      this.sameBoard(t);
+    }
+    t.checkExpect(this.decoder.originColor, 3);
+    t.checkExpect(this.decoder.moves, 4);
+  }
+
+  // To test that a receiver that missed a move keeps its board until it gets a
+  // full message again
+  void testMissedMove(Tester t) {
+    this.InitDelta();
+    // Nothing can be applied before the first full message
+    t.checkExpect(this.decoder.apply(new FloodDeltaEncoder(3).encodeMove(0, new int[0], 0)),
+        false);
+    this.decoder.apply(this.encodeFull());
+    this.world.pickColor(Color.RED);
+    this.world.floodCompletely();
+    this.encodeMove();
+    this.world.pickColor(Color.ORANGE);
+    this.world.floodCompletely();
+    t.checkExpect(this.decoder.apply(this.encodeMove()), false);
+    t.checkExpect(this.decoder.moves, 0);
+    t.checkExpect(this.decoder.flooded[1], false);
+    t.checkExpect(this.decoder.apply(this.encodeFull()), true);
+    t.checkExpect(this.decoder.moves, 2);
+    this.sameBoard(t);
+    this.world.pickColor(Color.YELLOW);
+    this.world.floodCompletely();
+    t.checkExpect(this.decoder.apply(this.encodeMove()), true);
+    this.sameBoard(t);
+  }
+
+  // To test the encoder and decoder on large random games
+  void testLargeGames(Tester t) {
+    Random r = new Random(7);
+    for (int game = 0; game < 20; game++) {
+      this.world = new FloodItWorld(2 + r.nextInt(30), 2 + r.nextInt(7), new Random(game));
+      this.world.floodCompletely();
+      this.encoder = new FloodDeltaEncoder(this.world.boardSize);
+      this.decoder = new FloodDeltaDecoder();
+      this.decoder.apply(this.encodeFull());
+      while (this.world.numClicks < this.world.maxClicks) {
+        this.world.pickColor(FloodItWorld.COLORS.get(r.nextInt(this.world.numColor)));
+        this.world.floodCompletely();
+        this.decoder.apply(this.encodeMove());
+      }
+      this.sameBoard(t);
+    }
+  }
+
+  // To test writeVarint and readVarint
+  void testVarint(Tester t) {
+    this.InitDelta();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FloodDeltaEncoder.writeVarint(out, 5);
+    FloodDeltaEncoder.writeVarint(out, 300);
+    FloodDeltaEncoder.writeVarint(out, 1 << 20);
+    byte[] bytes = out.toByteArray();
+    t.checkExpect(bytes.length, 6);
+    this.decoder.position = 0;
+    t.checkExpect(this.decoder.readVarint(bytes), 5);
+    t.checkExpect(this.decoder.readVarint(bytes), 300);
+    t.checkExpect(this.decoder.readVarint(bytes), 1 << 20);
+  }
+}
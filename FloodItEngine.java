@@ -0,0 +1,447 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Represents which cells of a board are next to each other, kept in two flat
+// arrays: the neighbors of cell c are neighbors[neighborStart[c]] up to
+// neighbors[neighborStart[c + 1]]. Cells are numbered row by row.
+abstract class ATopology {
+  // The number of columns and rows
+  int width;
+  int height;
+  // Where the neighbors of every cell start, with one extra entry at the end
+  int[] neighborStart;
+  // The neighbors of every cell, one after the other
+  int[] neighbors;
+
+  ATopology(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.build();
+  }
+
+  // To list the neighbors of the cell at the given column and row, which may be
+  // repeated or off the board, producing how many were listed
+  // EFFECT: Writes the neighbors into the given array as x, y pairs
+  abstract int listNeighbors(int x, int y, int[] out);
+
+  // To get the number of cells
+  int cells() {
+    return this.width * this.height;
+  }
+
+  // To fill the two arrays from the neighbors listed for every cell
+  // EFFECT: Mutates the neighborStart and neighbors fields
+  void build() {
+    int cells = this.cells();
+    int[] listed = new int[16];
+    int[] found = new int[8];
+    this.neighborStart = new int[cells + 1];
+    this.neighbors = new int[cells * 6];
+    int count = 0;
+    for (int cell = 0; cell < cells; cell++) {
+      this.neighborStart[cell] = count;
+      int numListed = this.listNeighbors(cell % this.width, cell / this.width, listed);
+      int numFound = 0;
+      for (int i = 0; i < numListed; i++) {
+        int x = listed[i * 2];
+        int y = listed[i * 2 + 1];
+        if (x >= 0 && x < this.width && y >= 0 && y < this.height) {
+          int next = y * this.width + x;
+          boolean repeated = next == cell;
+          for (int j = 0; j < numFound; j++) {
+            repeated = repeated || found[j] == next;
+          }
+          if (!repeated) {
+            found[numFound++] = next;
+          }
+        }
+      }
+      if (count + numFound > this.neighbors.length) {
+        this.neighbors = Arrays.copyOf(this.neighbors, this.neighbors.length * 2);
+      }
+      System.arraycopy(found, 0, this.neighbors, count, numFound);
+      count += numFound;
+    }
+    this.neighborStart[cells] = count;
+    this.neighbors = Arrays.copyOf(this.neighbors, count);
+  }
+}
+
+// Represents a board of squares, like the one of the flood it game
+class GridTopology extends ATopology {
+  GridTopology(int width, int height) {
+    super(width, height);
+  }
+
+  // The cells to the left, top, right, and bottom
+  int listNeighbors(int x, int y, int[] out) {
+    int[] listed = { x - 1, y, x, y - 1, x + 1, y, x, y + 1 };
+    System.arraycopy(listed, 0, out, 0, listed.length);
+    return 4;
+  }
+}
+
+// Represents a board of squares whose edges wrap around to the opposite edge
+class TorusTopology extends ATopology {
+  TorusTopology(int width, int height) {
+    super(width, height);
+  }
+
+  // The cells to the left, top, right, and bottom, wrapping around the edges
+  int listNeighbors(int x, int y, int[] out) {
+    int[] listed = { (x + this.width - 1) % this.width, y, x, (y + this.height - 1) % this.height,
+        (x + 1) % this.width, y, x, (y + 1) % this.height };
+    System.arraycopy(listed, 0, out, 0, listed.length);
+    return 4;
+  }
+}
+
+// Represents a board of hexagons in rows, with every odd row shifted right by
+// half a hexagon
+class HexTopology extends ATopology {
+  HexTopology(int width, int height) {
+    super(width, height);
+  }
+
+  // The cells to the left and right, and the two above and the two below
+  int listNeighbors(int x, int y, int[] out) {
+    // The column of the left cell of the pairs above and below
+    int shift = y % 2 == 0 ? x - 1 : x;
+    int[] listed = { x - 1, y, x + 1, y, shift, y - 1, shift + 1, y - 1, shift, y + 1,
+        shift + 1, y + 1 };
+    System.arraycopy(listed, 0, out, 0, listed.length);
+    return 6;
+  }
+}
+
+// Represents a flood it board played by one or more players at once, each flooding
+// from their own origin. A cell belongs to at most one player and, once claimed,
+// is locked against every other player. The board is kept in flat arrays and the
+// color of a claimed cell is the color of its owner, so a move only touches the
+// cells it claims and the frontier of the player who made it. The cells may be
+// laid out in any topology.
+class MultiFloodEngine {
+  // Which cells are next to each other
+  ATopology topology;
+  // Number of colors
+  int numColor;
+  // The color index of every unclaimed cell, row by row
+  int[] colors;
+  // The player who claimed every cell, or -1
+  int[] owner;
+  // The origin cell of every player
+  int[] origins;
+  // The color index of every player's region
+  int[] playerColor;
+  // The number of cells every player has claimed
+  int[] claimed;
+  // The cells next to every player's region that were unclaimed when they were
+  // added, in frontier[p][0] up to frontier[p][frontierSize[p]]. A cell claimed
+  // by someone else since is dropped the next time the frontier is walked.
+  int[][] frontier;
+  int[] frontierSize;
+  // For every cell, one bit for each player whose frontier has the cell
+  int[] inFrontier;
+  // The cells waiting to be walked by a move
+  int[] stack;
+  // The frontier cells of the color of a move
+  int[] starts;
+
+  // To start a game on the given square board with one player at each of the
+  // given origins
+  MultiFloodEngine(int boardSize, int numColor, int[] colors, int[] origins) {
+    this(new GridTopology(boardSize, boardSize), numColor, colors, origins);
+  }
+
+  // To start a game on the given board with one player at each of the given
+  // origins. Each player starts with the region of their origin, in order.
+  MultiFloodEngine(ATopology topology, int numColor, int[] colors, int[] origins) {
+    if (origins.length > 32) {
+      throw new IllegalArgumentException("At most 32 players can flood at once");
+    }
+    if (colors.length != topology.cells()) {
+      throw new IllegalArgumentException("Expected " + topology.cells() + " colors");
+    }
+    this.topology = topology;
+    this.numColor = numColor;
+    this.colors = colors.clone();
+    this.owner = new int[colors.length];
+    Arrays.fill(this.owner, -1);
+    this.origins = origins.clone();
+    this.playerColor = new int[origins.length];
+    this.claimed = new int[origins.length];
+    this.frontier = new int[origins.length][colors.length];
+    this.frontierSize = new int[origins.length];
+    this.inFrontier = new int[colors.length];
+    this.stack = new int[colors.length];
+    this.starts = new int[colors.length];
+    for (int player = 0; player < origins.length; player++) {
+      int origin = origins[player];
+      this.playerColor[player] = colors[origin];
+      if (this.owner[origin] < 0) {
+        this.claim(player, origin);
+      }
+    }
+  }
+
+  // To get the origins of the given number of players: the top left corner, then
+  // the bottom right, then the top right and the bottom left
+  static int[] corners(int boardSize, int players) {
+    int[] all = { 0, boardSize * boardSize - 1, boardSize - 1, boardSize * (boardSize - 1) };
+    if (players < 1 || players > 4) {
+      throw new IllegalArgumentException("Players must be between 1 and 4");
+    }
+    return Arrays.copyOf(all, players);
+  }
+
+  // To get the color index of every cell of the given world, row by row
+  static int[] colorsOf(FloodItWorld world) {
+    int[] colors = new int[world.boardSize * world.boardSize];
+    int index = 0;
+    for (ArrayList<Cell> row : world.board) {
+      for (Cell cell : row) {
+        colors[index] = FloodItWorld.COLORS.indexOf(cell.color);
+        index++;
+      }
+    }
+    return colors;
+  }
+
+  // To get the number of players
+  int players() {
+    return this.origins.length;
+  }
+
+  // To get the color index of the given cell
+  int colorAt(int cell) {
+    if (this.owner[cell] >= 0) {
+      return this.playerColor[this.owner[cell]];
+    }
+    return this.colors[cell];
+  }
+
+  // To determine if every cell has been claimed
+  boolean isFinished() {
+    int total = 0;
+    for (int count : this.claimed) {
+      total += count;
+    }
+    return total == this.colors.length;
+  }
+
+  // To flood the region of the given player with the given color, producing the
+  // number of cells claimed
+  // EFFECT: Claims the unclaimed cells of that color connected to the player's
+  // region, and updates the player's frontier
+  int move(int player, int color) {
+    this.playerColor[player] = color;
+    int before = this.claimed[player];
+    int[] cells = this.frontier[player];
+    int size = this.frontierSize[player];
+    int bit = 1 << player;
+    int kept = 0;
+    int numStarts = 0;
+    // Walk the frontier once: drop the cells claimed by anyone, set aside the cells
+    // of the color, and keep the others
+    for (int i = 0; i < size; i++) {
+      int cell = cells[i];
+      if (this.owner[cell] >= 0) {
+        this.inFrontier[cell] &= ~bit;
+      }
+      else if (this.colors[cell] == color) {
+        this.inFrontier[cell] &= ~bit;
+        this.starts[numStarts++] = cell;
+      }
+      else {
+        cells[kept++] = cell;
+      }
+    }
+    this.frontierSize[player] = kept;
+    // Claim the regions of the color, which adds their neighbors to the frontier
+    for (int i = 0; i < numStarts; i++) {
+      if (this.owner[this.starts[i]] < 0) {
+        this.claim(player, this.starts[i]);
+      }
+    }
+    return this.claimed[player] - before;
+  }
+
+  // To claim the given cell and every unclaimed cell of its color connected to it
+  // for the given player, adding the cells around them to the player's frontier
+  // EFFECT: Mutates the owners, the claimed count, and the frontier
+  void claim(int player, int start) {
+    int color = this.colors[start];
+    int top = 0;
+    this.owner[start] = player;
+    this.stack[top++] = start;
+    int[] neighborStart = this.topology.neighborStart;
+    int[] neighbors = this.topology.neighbors;
+    while (top > 0) {
+      int cell = this.stack[--top];
+      this.claimed[player]++;
+      for (int i = neighborStart[cell]; i < neighborStart[cell + 1]; i++) {
+        top = this.reach(player, neighbors[i], color, top);
+      }
+    }
+  }
+
+  // To handle reaching the given neighbor while claiming cells of the given color:
+  // an unclaimed cell of that color is claimed, any other unclaimed cell joins the
+  // frontier. Produces the new top of the stack.
+  // EFFECT: Mutates the owners, the stack, and the frontier
+  int reach(int player, int cell, int color, int top) {
+    if (this.owner[cell] < 0) {
+      if (this.colors[cell] == color) {
+        this.owner[cell] = player;
+        this.stack[top] = cell;
+        return top + 1;
+      }
+      int bit = 1 << player;
+      if ((this.inFrontier[cell] & bit) == 0) {
+        this.inFrontier[cell] |= bit;
+        this.frontier[player][this.frontierSize[player]++] = cell;
+      }
+    }
+    return top;
+  }
+}
+
+// Represents examples of the multi origin engine
+class ExamplesFloodItEngine {
+  ExamplesFloodItEngine() {
+  }
+
+  int[] colors = ExamplesFloodItWorld.exampleColors();
+
+  // To test the constructor and the corners method
+  void testStart(Tester t) {
+    t.checkExpect(MultiFloodEngine.corners(3, 4), new int[] { 0, 8, 2, 6 });
+    t.checkExpect(MultiFloodEngine.corners(3, 2), new int[] { 0, 8 });
+    MultiFloodEngine engine = new MultiFloodEngine(3, 4, this.colors,
+        MultiFloodEngine.corners(3, 4));
+    t.checkExpect(engine.owner, new int[] { 0, -1, 2, 3, -1, -1, 3, -1, 1 });
+    t.checkExpect(engine.claimed, new int[] { 1, 1, 1, 2 });
+    t.checkExpect(engine.playerColor, new int[] { 2, 3, 1, 1 });
+    t.checkExpect(engine.frontierSize, new int[] { 2, 2, 2, 2 });
+  }
+
+  // To test the move method with one player
+  void testMoveOnePlayer(Tester t) {
+    MultiFloodEngine engine = new MultiFloodEngine(3, 4, this.colors, new int[] { 0 });
+    t.checkExpect(engine.move(0, 0), 3);
+    t.checkExpect(engine.colorAt(5), 0);
+    t.checkExpect(engine.move(0, 1), 3);
+    t.checkExpect(engine.move(0, 1), 0);
+    t.checkExpect(engine.move(0, 2), 1);
+    t.checkExpect(engine.isFinished(), false);
+    t.checkExpect(engine.move(0, 3), 1);
+    t.checkExpect(engine.isFinished(), true);
+    t.checkExpect(engine.colorAt(0), 3);
+  }
+
+  // To test that claimed cells are locked against other players
+  void testMoveTwoPlayers(Tester t) {
+    MultiFloodEngine engine = new MultiFloodEngine(3, 4, this.colors,
+        MultiFloodEngine.corners(3, 2));
+    // Player 1 at green takes the red region first
+    t.checkExpect(engine.move(1, 0), 3);
+    t.checkExpect(engine.move(0, 0), 0);
+    t.checkExpect(engine.owner[4], 1);
+    t.checkExpect(engine.move(0, 1), 2);
+    // The orange cell next to player 1 is player 0's now
+    t.checkExpect(engine.move(1, 1), 1);
+    t.checkExpect(engine.move(0, 2), 1);
+    t.checkExpect(engine.move(1, 2), 0);
+    t.checkExpect(engine.isFinished(), true);
+    t.checkExpect(engine.claimed, new int[] { 4, 5 });
+    t.checkExpect(engine.frontierSize, new int[] { 0, 0 });
+  }
+
+  // To test the neighbors of the grid, torus, and hex topologies
+  void testTopology(Tester t) {
+    ATopology grid = new GridTopology(3, 2);
+    t.checkExpect(grid.neighborStart, new int[] { 0, 2, 5, 7, 9, 12, 14 });
+    t.checkExpect(grid.neighbors, new int[] { 1, 3, 0, 2, 4, 1, 5, 0, 4, 3, 1, 5, 4, 2 });
+    ATopology torus = new TorusTopology(3, 3);
+    t.checkExpect(Arrays.copyOfRange(torus.neighbors, torus.neighborStart[0],
+        torus.neighborStart[1]), new int[] { 2, 6, 1, 3 });
+    t.checkExpect(torus.neighbors.length, 36);
+    // Repeated neighbors are listed once
+    t.checkExpect(new TorusTopology(2, 1).neighbors, new int[] { 1, 0 });
+    ATopology hex = new HexTopology(3, 3);
+    // The middle cell of an odd row touches six cells
+    t.checkExpect(Arrays.copyOfRange(hex.neighbors, hex.neighborStart[4],
+        hex.neighborStart[5]), new int[] { 3, 5, 1, 2, 7, 8 });
+    // The first cell of an even row touches three
+    t.checkExpect(Arrays.copyOfRange(hex.neighbors, hex.neighborStart[6],
+        hex.neighborStart[7]), new int[] { 7, 3 });
+  }
+
+  // To test that every topology lists its neighbors both ways
+  void testTopologySymmetric(Tester t) {
+    ATopology[] topologies = { new GridTopology(5, 4), new TorusTopology(4, 5),
+        new HexTopology(5, 6), new TorusTopology(2, 2) };
+    boolean symmetric = true;
+    for (ATopology topology : topologies) {
+      for (int cell = 0; cell < topology.cells(); cell++) {
+        for (int i = topology.neighborStart[cell]; i < topology.neighborStart[cell + 1]; i++) {
+          int next = topology.neighbors[i];
+          boolean back = false;
+          for (int j = topology.neighborStart[next]; j < topology.neighborStart[next + 1];
+              j++) {
+            back = back || topology.neighbors[j] == cell;
+          }
+          symmetric = symmetric && back;
+        }
+      }
+    }
+    t.checkExpect(symmetric, true);
+  }
+
+  // To test the move method on a torus and on hexagons
+  void testMoveTopologies(Tester t) {
+    MultiFloodEngine torus = new MultiFloodEngine(new TorusTopology(3, 3), 4, this.colors,
+        new int[] { 0 });
+    // The origin touches the orange cells across both edges
+    t.checkExpect(torus.frontierSize[0], 4);
+    t.checkExpect(torus.move(0, 1), 3);
+    // and the orange cells touch the green corner across them
+    t.checkExpect(torus.move(0, 3), 1);
+    t.checkExpect(torus.owner[8], 0);
+    MultiFloodEngine hex = new MultiFloodEngine(new HexTopology(3, 3), 4, this.colors,
+        new int[] { 0 });
+    t.checkExpect(hex.move(0, 0), 3);
+    t.checkExpect(hex.move(0, 1), 3);
+    t.checkExpect(hex.move(0, 2), 1);
+    t.checkExpect(hex.move(0, 3), 1);
+    t.checkExpect(hex.isFinished(), true);
+  }
+
+  // To test the single player engine against the flood it game on random boards
+  void testMatchesFloodItWorld(Tester t) {
+    Random r = new Random(5);
+    boolean same = true;
+    for (int game = 0; game < 200; game++) {
+      FloodItWorld world = new FloodItWorld(2 + r.nextInt(12), 2 + r.nextInt(7),
+          new Random(game));
+      MultiFloodEngine engine = new MultiFloodEngine(world.boardSize, world.numColor,
+          MultiFloodEngine.colorsOf(world), new int[] { 0 });
+      world.floodCompletely();
+      while (world.numClicks < world.maxClicks) {
+        int color = r.nextInt(world.numColor);
+        world.pickColor(FloodItWorld.COLORS.get(color));
+        world.floodCompletely();
+        engine.move(0, color);
+        same = same && engine.claimed[0] == world.countFlooded();
+        for (int cell = 0; cell < engine.colors.length; cell++) {
+          Cell worldCell = world.board.get(cell / world.boardSize).get(cell % world.boardSize);
+          same = same && (engine.owner[cell] == 0) == worldCell.flooded
+              && engine.colorAt(cell) == FloodItWorld.COLORS.indexOf(worldCell.color);
+        }
+      }
+    }
+    t.checkExpect(same, true);
+  }
+}
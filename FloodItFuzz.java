@@ -0,0 +1,536 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+// Represents a board and the cells clicked on it, played by the fuzzer
+class FloodCase {
+  // Size of the board (Represents both the number of rows and columns)
+  int boardSize;
+  // Number of colors
+  int numColor;
+  // The color index of every cell, row by row
+  int[] colors;
+  // The cell clicked by every move, as y * boardSize + x
+  int[] moves;
+
+  FloodCase(int boardSize, int numColor, int[] colors, int[] moves) {
+    this.boardSize = boardSize;
+    this.numColor = numColor;
+    this.colors = colors;
+    this.moves = moves;
+  }
+
+  // To make a random case with a board of at most the given size, and as many
+  // moves as a player is given on it
+  static FloodCase random(Random r, int maxSize) {
+    int size = 1 + r.nextInt(maxSize);
+    int numColor = 1 + r.nextInt(8);
+    int[] colors = new int[size * size];
+    for (int cell = 0; cell < colors.length; cell++) {
+      colors[cell] = r.nextInt(numColor);
+    }
+    int[] moves = new int[r.nextInt((int) (size * 2.5) + numColor / 2 + 1)];
+    for (int move = 0; move < moves.length; move++) {
+      moves[move] = r.nextInt(colors.length);
+    }
+    return new FloodCase(size, numColor, colors, moves);
+  }
+
+  // To get this case with only the first given number of moves
+  FloodCase firstMoves(int count) {
+    return new FloodCase(this.boardSize, this.numColor, this.colors,
+        Arrays.copyOf(this.moves, count));
+  }
+
+  // To get this case without the given move
+  FloodCase withoutMove(int move) {
+    int[] moves = new int[this.moves.length - 1];
+    System.arraycopy(this.moves, 0, moves, 0, move);
+    System.arraycopy(this.moves, move + 1, moves, move, moves.length - move);
+    return new FloodCase(this.boardSize, this.numColor, this.colors, moves);
+  }
+
+  // To get this case without the given row and column of the board, and without
+  // the moves that clicked them
+  FloodCase without(int line) {
+    int size = this.boardSize - 1;
+    int[] colors = new int[size * size];
+    for (int cell = 0; cell < colors.length; cell++) {
+      colors[cell] = this.colors[this.index(cell / size, cell % size, line)];
+    }
+    int[] moves = new int[this.moves.length];
+    int count = 0;
+    for (int move : this.moves) {
+      int x = move % this.boardSize;
+      int y = move / this.boardSize;
+      if (x != line && y != line) {
+        moves[count++] = (y > line ? y - 1 : y) * size + (x > line ? x - 1 : x);
+      }
+    }
+    return new FloodCase(size, this.numColor, colors, Arrays.copyOf(moves, count));
+  }
+
+  // To get the index in this board of the given row and column of the board
+  // without the given row and column
+  int index(int y, int x, int line) {
+    return (y >= line ? y + 1 : y) * this.boardSize + (x >= line ? x + 1 : x);
+  }
+
+  // To get this case with the given cell changed to the given color
+  FloodCase recolored(int cell, int color) {
+    int[] colors = this.colors.clone();
+    colors[cell] = color;
+    return new FloodCase(this.boardSize, this.numColor, colors, this.moves);
+  }
+
+  // To get this case with as few colors as its board uses
+  FloodCase fewestColors() {
+    int used = 1;
+    for (int color : this.colors) {
+      used = Math.max(used, color + 1);
+    }
+    return new FloodCase(this.boardSize, used, this.colors, this.moves);
+  }
+
+  // To show this case so that it can be played again
+  public String toString() {
+    return "size " + this.boardSize + ", " + this.numColor + " colors, board "
+        + Arrays.toString(this.colors) + ", clicks " + Arrays.toString(this.moves);
+  }
+}
+
+// Represents a flood engine being checked against FloodItWorld. Colors are
+// indices into FloodItWorld.COLORS and cells are y * boardSize + x.
+interface IFloodEngine {
+  // To start a game on the given board, with the top left cell flooded
+  void start(int boardSize, int numColor, int[] colors);
+
+  // To flood with the given color
+  void move(int color);
+
+  // To determine if the given cell is flooded
+  boolean isFlooded(int cell);
+
+  // To get the color index of the given cell
+  int colorAt(int cell);
+}
+
+// Represents the multi origin engine played by one player from the top left
+class SinglePlayerEngine implements IFloodEngine {
+  MultiFloodEngine engine;
+
+  // To start a game on the given board, with the top left cell flooded
+  public void start(int boardSize, int numColor, int[] colors) {
+    this.engine = new MultiFloodEngine(boardSize, numColor, colors,
+        MultiFloodEngine.corners(boardSize, 1));
+  }
+
+  // To flood with the given color
+  public void move(int color) {
+    this.engine.move(0, color);
+  }
+
+  // To determine if the given cell is flooded
+  public boolean isFlooded(int cell) {
+    return this.engine.owner[cell] == 0;
+  }
+
+  // To get the color index of the given cell
+  public int colorAt(int cell) {
+    return this.engine.colorAt(cell);
+  }
+}
+
+// Represents the region level search state played as a game
+class RegionSearchEngine implements IFloodEngine {
+  FloodSearchState state;
+
+  // To start a game on the given board, with the top left cell flooded
+  public void start(int boardSize, int numColor, int[] colors) {
+    this.state = new FloodSearchState(RegionGraph.build(boardSize, numColor, colors));
+  }
+
+  // To flood with the given color
+  public void move(int color) {
+    this.state.move(color);
+  }
+
+  // To determine if the given cell is flooded
+  public boolean isFlooded(int cell) {
+    return this.state.flooded[this.state.graph.regionOf[cell]];
+  }
+
+  // To get the color index of the given cell
+  public int colorAt(int cell) {
+    if (this.isFlooded(cell)) {
+      return this.state.color;
+    }
+    return this.state.graph.regionColor[this.state.graph.regionOf[cell]];
+  }
+}
+
+// Represents the results of a fuzzer run
+class FuzzReport {
+  // The number of cases played
+  long cases;
+  // The number of moves compared
+  long moves;
+  // The shrunk failing cases
+  ArrayList<FloodCase> failures;
+  // How long the run took
+  long nanos;
+
+  FuzzReport() {
+    this.failures = new ArrayList<FloodCase>();
+  }
+
+  // To show the results
+  public String toString() {
+    double seconds = this.nanos / 1e9;
+    return this.cases + " cases, " + this.moves + " moves, " + this.failures.size()
+        + " failures in " + String.format("%.1f", seconds) + "s ("
+        + String.format("%.0f", this.cases * 3600 / Math.max(seconds, 1e-9)) + " cases/hour)";
+  }
+}
+
+// Plays random cases through FloodItWorld, clicking with onMousePressed and
+// flooding with changeFloodedCellColor and mutateFlooded until nothing changes,
+// and through another engine, comparing the flooded cells and the colors of the
+// whole board after every move. Failing cases are shrunk to a smallest board and
+// list of moves that still fail. Case i of a run is made from seed + i, so a run
+// gives the same cases however many threads play it.
+class FloodFuzzer {
+  // Makes an engine for each thread
+  Supplier<IFloodEngine> engines;
+  // The largest board played
+  int maxSize;
+  // The most failures kept, after which the run stops
+  int maxFailures;
+
+  FloodFuzzer(Supplier<IFloodEngine> engines, int maxSize, int maxFailures) {
+    this.engines = engines;
+    this.maxSize = maxSize;
+    this.maxFailures = maxFailures;
+  }
+
+  // To play the given number of cases from the given seed on the given number of
+  // threads
+  FuzzReport run(long seed, long cases, int threads) throws InterruptedException {
+    FuzzReport report = new FuzzReport();
+    AtomicLong next = new AtomicLong(0);
+    AtomicLong played = new AtomicLong(0);
+    AtomicLong moves = new AtomicLong(0);
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    for (int thread = 0; thread < threads; thread++) {
+      pool.execute(() -> {
+        IFloodEngine engine = this.engines.get();
+        FloodItWorld[] reference = new FloodItWorld[1];
+        long index = next.getAndIncrement();
+        while (index < cases) {
+          FloodCase c = FloodCase.random(new Random(seed + index), this.maxSize);
+          FloodCase failure = null;
+          try {
+            if (this.divergence(c, engine, reference) >= 0) {
+              failure = this.shrink(c, engine, reference);
+            }
+          }
+          catch (RuntimeException | StackOverflowError e) {
+            // Keep the case unshrunk rather than losing it and the rest of this
+            // thread's cases
+            failure = c;
+          }
+          played.incrementAndGet();
+          moves.addAndGet(c.moves.length);
+          if (failure != null) {
+            synchronized (report) {
+              if (report.failures.size() < this.maxFailures) {
+                report.failures.add(failure);
+              }
+              if (report.failures.size() >= this.maxFailures) {
+                next.set(cases);
+              }
+            }
+          }
+          index = next.getAndIncrement();
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    report.cases = played.get();
+    report.moves = moves.get();
+    report.nanos = System.nanoTime() - start;
+    return report;
+  }
+
+  // To play the given case, producing the number of moves played when the engine
+  // first differed from FloodItWorld or either of them threw, or -1 if neither
+  // did. The world is put in the given slot so that its board can be reused.
+  // EFFECT: Mutates the engine and the world in the slot
+  int divergence(FloodCase c, IFloodEngine engine, FloodItWorld[] reference) {
+    int played = 0;
+    try {
+      FloodItWorld world = this.startWorld(c, reference);
+      engine.start(c.boardSize, c.numColor, c.colors);
+      if (!this.matches(world, engine)) {
+        return 0;
+      }
+      int cellSize = 500 / c.boardSize;
+      for (int move = 0; move < c.moves.length; move++) {
+        played = move + 1;
+        int x = c.moves[move] % c.boardSize;
+        int y = c.moves[move] / c.boardSize;
+        world.onMousePressed(new Posn(100 + x * cellSize + cellSize / 2,
+            100 + y * cellSize + cellSize / 2));
+        world.floodCompletely();
+        engine.move(FloodItWorld.COLORS.indexOf(world.board.get(0).get(0).color));
+        if (!this.matches(world, engine)) {
+          return played;
+        }
+      }
+      return -1;
+    }
+    catch (RuntimeException | StackOverflowError e) {
+      // A throw is a failure too, and is shrunk like one. The world may be left
+      // half changed, so the next case makes a new one. Other errors, such as
+      // running out of memory, stop the fuzzer.
+      reference[0] = null;
+      return played;
+    }
+  }
+
+  // To set up FloodItWorld with the board of the given case, reusing the world
+  // in the slot when it has the same size
+  // EFFECT: Puts the world in the slot
+  FloodItWorld startWorld(FloodCase c, FloodItWorld[] reference) {
+    FloodItWorld world = reference[0];
+    if (world == null || world.boardSize != c.boardSize) {
+      world = new FloodItWorld(c.boardSize, c.numColor, new Random(0));
+      reference[0] = world;
+    }
+    world.loadBoard(c.numColor, c.colors);
+    world.maxClicks = Integer.MAX_VALUE;
+    return world;
+  }
+
+  // To determine if every cell is flooded and colored the same in the world and
+  // the engine
+  boolean matches(FloodItWorld world, IFloodEngine engine) {
+    int cell = 0;
+    for (ArrayList<Cell> row : world.board) {
+      for (Cell boardCell : row) {
+        if (boardCell.flooded != engine.isFlooded(cell)
+            || FloodItWorld.COLORS.indexOf(boardCell.color) != engine.colorAt(cell)) {
+          return false;
+        }
+        cell++;
+      }
+    }
+    return true;
+  }
+
+  // To shrink the given failing case until no smaller board, fewer moves, or
+  // fewer colors still fail
+  FloodCase shrink(FloodCase failing, IFloodEngine engine, FloodItWorld[] reference) {
+    FloodCase smallest = failing.firstMoves(this.divergence(failing, engine, reference));
+    boolean shrinking = true;
+    while (shrinking) {
+      shrinking = false;
+      FloodCase candidate;
+      for (int line = smallest.boardSize - 1; line >= 0 && smallest.boardSize > 1; line--) {
+        candidate = smallest.without(line);
+        if (this.divergence(candidate, engine, reference) >= 0) {
+          smallest = candidate;
+          shrinking = true;
+        }
+      }
+      for (int move = smallest.moves.length - 1; move >= 0; move--) {
+        candidate = smallest.withoutMove(move);
+        if (this.divergence(candidate, engine, reference) >= 0) {
+          smallest = candidate;
+          shrinking = true;
+        }
+      }
+      for (int cell = 0; cell < smallest.colors.length; cell++) {
+        for (int color = 0; color < smallest.colors[cell]; color++) {
+          candidate = smallest.recolored(cell, color);
+          if (this.divergence(candidate, engine, reference) >= 0) {
+            smallest = candidate;
+            shrinking = true;
+          }
+        }
+      }
+      candidate = smallest.fewestColors();
+      if (this.divergence(candidate, engine, reference) >= 0) {
+        smallest = candidate;
+      }
+      smallest = smallest.firstMoves(this.divergence(smallest, engine, reference));
+    }
+    return smallest;
+  }
+
+  // To fuzz the engines: java FloodFuzzer [cases] [seed] [max size]
+  public static void main(String[] args) throws InterruptedException {
+    long cases = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+    int maxSize = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+    int threads = Runtime.getRuntime().availableProcessors();
+    System.out.println("seed " + seed + " on " + threads + " threads");
+    ArrayList<Supplier<IFloodEngine>> engines = new ArrayList<Supplier<IFloodEngine>>();
+    engines.add(() -> new SinglePlayerEngine());
+    engines.add(() -> new RegionSearchEngine());
+    engines.add(() -> new CompactStateEngine());
+    String[] names = { "MultiFloodEngine", "FloodSearchState", "CompactFloodState" };
+    for (int engine = 0; engine < engines.size(); engine++) {
+      FuzzReport report = new FloodFuzzer(engines.get(engine), maxSize, 5).run(seed, cases,
+          threads);
+      System.out.println(names[engine] + ": " + report);
+      for (FloodCase failure : report.failures) {
+        System.out.println("  " + failure);
+      }
+    }
+  }
+}
+
+// Represents an engine that ignores every move of one color, to check that the
+// fuzzer finds and shrinks failures
+class SkipColorEngine extends SinglePlayerEngine {
+  int skipped;
+
+  SkipColorEngine(int skipped) {
+    this.skipped = skipped;
+  }
+
+  // To flood with the given color, unless it is the skipped one
+  public void move(int color) {
+    if (color != this.skipped) {
+      super.move(color);
+    }
+  }
+}
+
+// Represents an engine that throws on every move of one color, to check that the
+// fuzzer counts throws as failures
+class ThrowingEngine extends SinglePlayerEngine {
+  int thrown;
+
+  ThrowingEngine(int thrown) {
+    this.thrown = thrown;
+  }
+
+  // To flood with the given color, throwing if it is the thrown one
+  public void move(int color) {
+    if (color == this.thrown) {
+      throw new IllegalStateException("Cannot flood with color " + color);
+    }
+    super.move(color);
+  }
+}
+
+// Represents an engine that throws on boards with the given number of colors, to
+// check that the fuzzer does not shrink such a case to fewer colors
+class ColorCountEngine extends SinglePlayerEngine {
+  int failing;
+
+  ColorCountEngine(int failing) {
+    this.failing = failing;
+  }
+
+  // To start a game on the given board, throwing if it has the failing number of
+  // colors
+  public void start(int boardSize, int numColor, int[] colors) {
+    if (numColor == this.failing) {
+      throw new IllegalStateException("Cannot play " + numColor + " colors");
+    }
+    super.start(boardSize, numColor, colors);
+  }
+}
+
+// Represents examples of the fuzzer
+class ExamplesFloodItFuzz {
+  ExamplesFloodItFuzz() {
+  }
+
+  FloodCase example = new FloodCase(3, 4, ExamplesFloodItWorld.exampleColors(),
+      new int[] { 1, 3, 7, 8 });
+
+  // To test the random, without, withoutMove, and fewestColors methods of FloodCase
+  void testFloodCase(Tester t) {
+    t.checkExpect(FloodCase.random(new Random(5), 10), FloodCase.random(new Random(5), 10));
+    t.checkExpect(this.example.without(2), new FloodCase(2, 4, new int[] { 2, 0, 1, 0 },
+        new int[] { 1, 2 }));
+    t.checkExpect(this.example.without(0), new FloodCase(2, 4, new int[] { 0, 0, 2, 3 },
+        new int[] { 2, 3 }));
+    t.checkExpect(this.example.withoutMove(1).moves, new int[] { 1, 7, 8 });
+    t.checkExpect(this.example.firstMoves(2).moves, new int[] { 1, 3 });
+    t.checkExpect(this.example.recolored(8, 0).fewestColors().numColor, 3);
+  }
+
+  // To test the divergence method on the example board
+  void testDivergence(Tester t) {
+    FloodItWorld[] reference = new FloodItWorld[1];
+    FloodFuzzer fuzzer = new FloodFuzzer(() -> new SinglePlayerEngine(), 8, 1);
+    t.checkExpect(fuzzer.divergence(this.example, new SinglePlayerEngine(), reference), -1);
+    t.checkExpect(fuzzer.divergence(this.example, new RegionSearchEngine(), reference), -1);
+    t.checkExpect(reference[0].isWinner(), true);
+    // The second click is orange, the first move that does anything
+    t.checkExpect(fuzzer.divergence(this.example, new SkipColorEngine(1), reference), 2);
+    t.checkExpect(fuzzer.divergence(this.example, new SkipColorEngine(3), reference), 4);
+    t.checkExpect(fuzzer.divergence(this.example, new ThrowingEngine(1), reference), 2);
+    t.checkExpect(reference[0], null);
+  }
+
+  // To test that the engines match FloodItWorld
+  void testEnginesMatch(Tester t) throws InterruptedException {
+    FuzzReport multi = new FloodFuzzer(() -> new SinglePlayerEngine(), 10, 1).run(1, 500, 2);
+    t.checkExpect(multi.cases, 500L);
+    t.checkExpect(multi.failures.size(), 0);
+    FuzzReport search = new FloodFuzzer(() -> new RegionSearchEngine(), 10, 1).run(1, 500, 2);
+    t.checkExpect(search.cases, 500L);
+    t.checkExpect(search.failures.size(), 0);
+  }
+
+  // To test that failures are found and shrunk
+  void testShrink(Tester t) throws InterruptedException {
+    FuzzReport report = new FloodFuzzer(() -> new SkipColorEngine(1), 10, 3).run(2, 500, 2);
+    t.checkExpect(report.failures.size(), 3);
+    for (FloodCase failure : report.failures) {
+      // The smallest failures click the only orange cell of a red board
+      t.checkExpect(failure.boardSize, 2);
+      t.checkExpect(failure.numColor, 2);
+      t.checkExpect(failure.moves.length, 1);
+      t.checkExpect(failure.colors[failure.moves[0]], 1);
+      t.checkExpect(failure.colors[0] + failure.colors[1] + failure.colors[2]
+          + failure.colors[3], 1);
+    }
+  }
+
+  // To test that a failure that needs its number of colors keeps it
+  void testShrinkColors(Tester t) {
+    FloodFuzzer fuzzer = new FloodFuzzer(() -> new ColorCountEngine(6), 8, 1);
+    FloodCase failing = new FloodCase(3, 6, this.example.colors, this.example.moves);
+    t.checkExpect(fuzzer.shrink(failing, new ColorCountEngine(6), new FloodItWorld[1]),
+        new FloodCase(1, 6, new int[] { 0 }, new int[0]));
+  }
+
+  // To test that throws are found and shrunk, and that every case is counted
+  void testThrows(Tester t) throws InterruptedException {
+    FuzzReport report = new FloodFuzzer(() -> new ThrowingEngine(1), 10, 500).run(2, 200, 2);
+    t.checkExpect(report.cases, 200L);
+    t.checkExpect(report.failures.size() > 0, true);
+    for (FloodCase failure : report.failures) {
+      // One click that makes the origin orange is enough to throw
+      t.checkExpect(failure.boardSize <= 2, true);
+      t.checkExpect(failure.moves.length, 1);
+      t.checkExpect(failure.colors[failure.moves[0]], 1);
+    }
+  }
+}
@@ -0,0 +1,534 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import tester.Tester;
+
+// Represents a board as its regions: the largest connected groups of cells of one
+// color. Region 0 is the flooded region. The regions next to each region are kept
+// in two flat arrays: the neighbors of region r are
+// neighbors[neighborStart[r]] up to neighbors[neighborStart[r + 1]].
+class RegionGraph {
+  // Number of colors
+  int numColor;
+  // The region of every cell, row by row
+  int[] regionOf;
+  // The color index of every region
+  int[] regionColor;
+  // The number of cells in every region
+  int[] regionSize;
+  // Where the neighbors of every region start, with one extra entry at the end
+  int[] neighborStart;
+  // The neighbors of every region, one after the other
+  int[] neighbors;
+
+  RegionGraph(int numColor, int[] regionOf, int[] regionColor, int[] regionSize,
+      int[] neighborStart, int[] neighbors) {
+    this.numColor = numColor;
+    this.regionOf = regionOf;
+    this.regionColor = regionColor;
+    this.regionSize = regionSize;
+    this.neighborStart = neighborStart;
+    this.neighbors = neighbors;
+  }
+
+  // To get the number of regions
+  int size() {
+    return this.regionColor.length;
+  }
+
+  // To build the regions of the given world. Flooded cells count as the color of
+  // the origin even if the waterfall has not reached them yet.
+  static RegionGraph of(FloodItWorld world) {
+    int size = world.boardSize;
+    int[] colors = new int[size * size];
+    int originColor = FloodItWorld.COLORS.indexOf(world.board.get(0).get(0).color);
+    int index = 0;
+    for (ArrayList<Cell> row : world.board) {
+      for (Cell cell : row) {
+        if (cell.flooded) {
+          colors[index] = originColor;
+        }
+        else {
+          colors[index] = FloodItWorld.COLORS.indexOf(cell.color);
+        }
+        index++;
+      }
+    }
+    return build(size, world.numColor, colors);
+  }
+
+  // To build the regions of a square board from the color index of every cell,
+  // row by row. The region of the top left cell is region 0.
+  static RegionGraph build(int size, int numColor, int[] colors) {
+    return build(new GridTopology(size, size), numColor, colors);
+  }
+
+  // To build the regions of a board of any topology from the color index of
+  // every cell. The region of cell 0 is region 0.
+  static RegionGraph build(ATopology topology, int numColor, int[] colors) {
+    int cells = topology.cells();
+    int[] neighborStart = topology.neighborStart;
+    int[] neighbors = topology.neighbors;
+    int[] regionOf = new int[cells];
+    Arrays.fill(regionOf, -1);
+    int[] regionColor = new int[cells];
+    int[] regionSize = new int[cells];
+    int[] stack = new int[cells];
+    int numRegions = 0;
+    for (int start = 0; start < cells; start++) {
+      if (regionOf[start] < 0) {
+        int region = numRegions++;
+        regionColor[region] = colors[start];
+        regionOf[start] = region;
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+          int cell = stack[--top];
+          regionSize[region]++;
+          for (int i = neighborStart[cell]; i < neighborStart[cell + 1]; i++) {
+            top = visit(neighbors[i], region, colors[start], colors, regionOf, stack, top);
+          }
+        }
+      }
+    }
+
+    // Every pair of different regions that touch, both ways, as one long each
+    long[] edges = new long[neighbors.length];
+    int numEdges = 0;
+    for (int cell = 0; cell < cells; cell++) {
+      int a = regionOf[cell];
+      for (int i = neighborStart[cell]; i < neighborStart[cell + 1]; i++) {
+        if (regionOf[neighbors[i]] != a) {
+          edges[numEdges++] = ((long) a << 32) | regionOf[neighbors[i]];
+        }
+      }
+    }
+    Arrays.sort(edges, 0, numEdges);
+    int[] regionStart = new int[numRegions + 1];
+    int[] regionNeighbors = new int[numEdges];
+    int numNeighbors = 0;
+    for (int i = 0; i < numEdges; i++) {
+      if (i == 0 || edges[i] != edges[i - 1]) {
+        regionStart[(int) (edges[i] >>> 32) + 1]++;
+        regionNeighbors[numNeighbors++] = (int) edges[i];
+      }
+    }
+    for (int region = 0; region < numRegions; region++) {
+      regionStart[region + 1] += regionStart[region];
+    }
+    return new RegionGraph(numColor, regionOf, Arrays.copyOf(regionColor, numRegions),
+        Arrays.copyOf(regionSize, numRegions), regionStart,
+        Arrays.copyOf(regionNeighbors, numNeighbors));
+  }
+
+  // To add the given cell to the given region if it has the color of the region
+  // and has no region yet, producing the new top of the stack
+  // EFFECT: Mutates the region of the cell and the stack
+  static int visit(int cell, int region, int color, int[] colors, int[] regionOf,
+      int[] stack, int top) {
+    if (regionOf[cell] < 0 && colors[cell] == color) {
+      regionOf[cell] = region;
+      stack[top] = cell;
+      return top + 1;
+    }
+    return top;
+  }
+}
+
+// Represents a position in a search over the regions of a board. The flooded
+// region, the regions next to it, and the number of regions left of each color
+// are updated by every move instead of being recomputed, and so are the depths
+// of the regions once a bound has asked for them.
+class FloodSearchState {
+  // The regions of the board when the search started
+  RegionGraph graph;
+  // If every region is flooded
+  boolean[] flooded;
+  // If every region is next to the flooded region and not flooded
+  boolean[] inFrontier;
+  // The regions next to the flooded region, in frontier[0] up to
+  // frontier[frontierSize]
+  int[] frontier;
+  int frontierSize;
+  // The number of regions of every color that are not flooded
+  int[] remaining;
+  // The number of colors that still have regions that are not flooded
+  int colorsLeft;
+  // The color index of the flooded region
+  int color;
+  // The number of moves played since the search started
+  int moves;
+  // The regions flooded by the last move
+  int[] absorbedRegions;
+  // How far every region is from the flooded region, or null until a bound first
+  // asks for it
+  FloodAnalytics depths;
+
+  FloodSearchState(RegionGraph graph) {
+    this.graph = graph;
+    this.flooded = new boolean[graph.size()];
+    this.inFrontier = new boolean[graph.size()];
+    this.frontier = new int[graph.size()];
+    this.frontierSize = 0;
+    this.absorbedRegions = new int[graph.size()];
+    this.remaining = new int[graph.numColor];
+    this.colorsLeft = 0;
+    this.color = graph.regionColor[0];
+    this.moves = 0;
+    this.depths = null;
+    for (int region = 1; region < graph.size(); region++) {
+      if (this.remaining[graph.regionColor[region]] == 0) {
+        this.colorsLeft++;
+      }
+      this.remaining[graph.regionColor[region]]++;
+    }
+    this.flooded[0] = true;
+    this.addNeighbors(0);
+  }
+
+  // To copy this state, so that a search can try a move without losing it
+  FloodSearchState copy() {
+    FloodSearchState copy = new FloodSearchState(this.graph, this.flooded.clone(),
+        this.inFrontier.clone(), this.frontier.clone(), this.remaining.clone());
+    copy.frontierSize = this.frontierSize;
+    copy.colorsLeft = this.colorsLeft;
+    copy.color = this.color;
+    copy.moves = this.moves;
+    if (this.depths != null) {
+      copy.depths = this.depths.copy();
+    }
+    return copy;
+  }
+
+  // Constructor used by copy
+  FloodSearchState(RegionGraph graph, boolean[] flooded, boolean[] inFrontier,
+      int[] frontier, int[] remaining) {
+    this.graph = graph;
+    this.flooded = flooded;
+    this.inFrontier = inFrontier;
+    this.frontier = frontier;
+    this.remaining = remaining;
+    this.absorbedRegions = new int[graph.size()];
+    this.depths = null;
+  }
+
+  // To get how far every region is from the flooded region, walking the whole
+  // graph only the first time it is asked for
+  // EFFECT: Starts keeping the depths up to date
+  FloodAnalytics trackDepths() {
+    if (this.depths == null) {
+      this.depths = new FloodAnalytics(this.graph, this.flooded, this.color);
+    }
+    return this.depths;
+  }
+
+  // To determine if every region is flooded
+  boolean isSolved() {
+    return this.colorsLeft == 0;
+  }
+
+  // To flood with the given color, producing the number of regions it floods
+  // EFFECT: Floods the regions of that color next to the flooded region
+  int move(int newColor) {
+    this.moves++;
+    if (this.depths != null) {
+      this.depths.move(newColor);
+    }
+    this.color = newColor;
+    int absorbed = 0;
+    int kept = 0;
+    for (int i = 0; i < this.frontierSize; i++) {
+      int region = this.frontier[i];
+      if (this.graph.regionColor[region] == newColor) {
+        this.flooded[region] = true;
+        this.inFrontier[region] = false;
+        this.absorbedRegions[absorbed++] = region;
+      }
+      else {
+        this.frontier[kept++] = region;
+      }
+    }
+    this.frontierSize = kept;
+    if (absorbed > 0) {
+      this.remaining[newColor] -= absorbed;
+      if (this.remaining[newColor] == 0) {
+        this.colorsLeft--;
+      }
+      // The neighbors of the newly flooded regions join the frontier
+      for (int i = 0; i < absorbed; i++) {
+        this.addNeighbors(this.absorbedRegions[i]);
+      }
+    }
+    return absorbed;
+  }
+
+  // To add the neighbors of the given flooded region to the frontier
+  // EFFECT: Mutates the frontier
+  void addNeighbors(int region) {
+    for (int i = this.graph.neighborStart[region]; i < this.graph.neighborStart[region + 1];
+        i++) {
+      int next = this.graph.neighbors[i];
+      if (!this.flooded[next] && !this.inFrontier[next]) {
+        this.inFrontier[next] = true;
+        this.frontier[this.frontierSize++] = next;
+      }
+    }
+  }
+}
+
+// Represents a lower bound on the number of moves left to solve a search state.
+// A bound must never be more than the real number of moves left.
+interface IFloodBound {
+  // To estimate the number of moves left to solve the given state
+  int estimate(FloodSearchState state);
+}
+
+// Every color that is not flooded yet needs at least one move of that color
+class ColorsLeftBound implements IFloodBound {
+  // To estimate the number of moves left to solve the given state
+  public int estimate(FloodSearchState state) {
+    return state.colorsLeft;
+  }
+}
+
+// A move floods only regions next to the flooded region, so a region that is d
+// regions away from it needs at least d moves: the bound is the distance to the
+// farthest region. The distances are kept by the state as it moves (see
+// FloodAnalytics), so only the first estimate of a search walks the graph.
+class EccentricityBound implements IFloodBound {
+  // To estimate the number of moves left to solve the given state
+  public int estimate(FloodSearchState state) {
+    return state.trackDepths().maxDepth;
+  }
+}
+
+// The largest of several bounds, which is still a bound
+class MaxBound implements IFloodBound {
+  // The bounds to take the largest of
+  ArrayList<IFloodBound> bounds;
+
+  MaxBound(ArrayList<IFloodBound> bounds) {
+    this.bounds = bounds;
+  }
+
+  // The largest of the colors left and the eccentricity bounds
+  MaxBound() {
+    this(new ArrayList<IFloodBound>(Arrays.asList(new ColorsLeftBound(),
+        new EccentricityBound())));
+  }
+
+  // To estimate the number of moves left to solve the given state
+  public int estimate(FloodSearchState state) {
+    int best = 0;
+    for (IFloodBound bound : this.bounds) {
+      best = Math.max(best, bound.estimate(state));
+    }
+    return best;
+  }
+}
+
+// Measures the cost of every bound along random games of a 14 by 14 board with 6
+// colors, as a move and an estimate, since some bounds are kept up to date by the
+// moves
+class FloodHeuristicsBenchmark {
+  // Usage: FloodHeuristicsBenchmark [number of games]
+  public static void main(String[] args) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    Random r = new Random(42);
+    ArrayList<RegionGraph> graphs = new ArrayList<RegionGraph>();
+    ArrayList<int[]> moves = new ArrayList<int[]>();
+    int total = 0;
+    for (int game = 0; game < games; game++) {
+      FloodItWorld world = new FloodItWorld(14, 6, new Random(game));
+      FloodSearchState state = new FloodSearchState(RegionGraph.of(world));
+      int[] played = new int[state.graph.size()];
+      int count = 0;
+      while (!state.isSolved()) {
+        played[count] = state.graph.regionColor[state.frontier[r.nextInt(state.frontierSize)]];
+        state.move(played[count++]);
+      }
+      graphs.add(state.graph);
+      moves.add(Arrays.copyOf(played, count));
+      total += count;
+    }
+    IFloodBound[] bounds = { new ColorsLeftBound(), new EccentricityBound(), new MaxBound() };
+    String[] names = { "colors left", "eccentricity", "max" };
+    for (int i = 0; i < bounds.length; i++) {
+      long sum = 0;
+      // Run twice so that the second run is compiled
+      for (int run = 0; run < 2; run++) {
+        sum = 0;
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+          FloodSearchState state = new FloodSearchState(graphs.get(game));
+          for (int move : moves.get(game)) {
+            sum += bounds[i].estimate(state);
+            state.move(move);
+          }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (run == 1) {
+          System.out.printf(
+              "%-12s %8.1f ns per estimate and move (mean bound %.2f over %d states)%n",
+              names[i], (double) elapsed / total, (double) sum / total, total);
+        }
+      }
+    }
+  }
+}
+
+// Represents examples of regions, search states, and bounds
+class ExamplesFloodItHeuristics {
+  ExamplesFloodItHeuristics() {
+  }
+
+  RegionGraph graph;
+  FloodSearchState state;
+
+  void InitRegions() {
+    this.graph = RegionGraph.of(ExamplesFloodItWorld.exampleWorld());
+    this.state = new FloodSearchState(this.graph);
+  }
+
+  // To test the of and build methods
+  void testRegionGraph(Tester t) {
+    this.InitRegions();
+    t.checkExpect(this.graph.size(), 6);
+    t.checkExpect(this.graph.regionOf, new int[] { 0, 1, 2, 3, 1, 1, 3, 4, 5 });
+    t.checkExpect(this.graph.regionColor, new int[] { 2, 0, 1, 1, 2, 3 });
+    t.checkExpect(this.graph.regionSize, new int[] { 1, 3, 1, 2, 1, 1 });
+    t.checkExpect(this.graph.neighborStart, new int[] { 0, 2, 7, 8, 11, 14, 16 });
+    t.checkExpect(this.graph.neighbors,
+        new int[] { 1, 3, 0, 2, 3, 4, 5, 1, 0, 1, 4, 1, 3, 5, 1, 4 });
+    t.checkExpect(RegionGraph.build(2, 2, new int[] { 1, 1, 1, 1 }).size(), 1);
+    // On a torus the two yellow corners touch across the edge and become one
+    int[] colors = { 2, 0, 2, 1, 0, 0, 1, 2, 3 };
+    t.checkExpect(RegionGraph.build(3, 4, colors).size(), 6);
+    RegionGraph torus = RegionGraph.build(new TorusTopology(3, 3), 4, colors);
+    t.checkExpect(torus.regionOf, new int[] { 0, 1, 0, 2, 1, 1, 2, 3, 4 });
+  }
+
+  // To test the move and copy methods
+  void testMove(Tester t) {
+    this.InitRegions();
+    t.checkExpect(this.state.colorsLeft, 4);
+    t.checkExpect(this.state.frontierSize, 2);
+    FloodSearchState copy = this.state.copy();
+    t.checkExpect(this.state.move(0), 1);
+    t.checkExpect(this.state.colorsLeft, 3);
+    t.checkExpect(this.state.frontierSize, 4);
+    t.checkExpect(this.state.move(3), 1);
+    t.checkExpect(this.state.move(3), 0);
+    t.checkExpect(this.state.moves, 3);
+    t.checkExpect(copy.moves, 0);
+    t.checkExpect(copy.frontierSize, 2);
+    t.checkExpect(this.state.move(1), 2);
+    t.checkExpect(this.state.move(2), 1);
+    t.checkExpect(this.state.isSolved(), true);
+    t.checkExpect(copy.isSolved(), false);
+  }
+
+  // To test the estimate method of every bound on the example board
+  void testEstimate(Tester t) {
+    this.InitRegions();
+    t.checkExpect(new ColorsLeftBound().estimate(this.state), 4);
+    t.checkExpect(new EccentricityBound().estimate(this.state), 2);
+    t.checkExpect(new MaxBound().estimate(this.state), 4);
+    this.state.move(1);
+    t.checkExpect(new EccentricityBound().estimate(this.state), 2);
+    this.state.move(0);
+    t.checkExpect(new EccentricityBound().estimate(this.state), 1);
+    this.state.move(3);
+    this.state.move(2);
+    t.checkExpect(new MaxBound().estimate(this.state), 1);
+    this.state.move(1);
+    t.checkExpect(new MaxBound().estimate(this.state), 0);
+  }
+
+  // To test that no bound is more than one plus the bound after any move, and that
+  // every bound is 0 once solved, on thousands of random boards of sizes 2 to 14.
+  // Together these mean that a bound is never more than the moves left.
+  void testBoundsConsistent(Tester t) {
+    IFloodBound[] bounds = { new ColorsLeftBound(), new EccentricityBound(), new MaxBound() };
+    Random r = new Random(11);
+    boolean consistent = true;
+    for (int game = 0; game < 3000; game++) {
+      FloodItWorld world = new FloodItWorld(2 + game % 13, 2 + r.nextInt(7), new Random(game));
+      FloodSearchState current = new FloodSearchState(RegionGraph.of(world));
+      while (!current.isSolved()) {
+        for (IFloodBound bound : bounds) {
+          int before = bound.estimate(current);
+          for (int color = 0; color < current.graph.numColor; color++) {
+            FloodSearchState next = current.copy();
+            next.move(color);
+            consistent = consistent && before <= 1 + bound.estimate(next);
+          }
+        }
+        current.move(current.graph.regionColor[current.frontier[r.nextInt(
+            current.frontierSize)]]);
+      }
+      for (IFloodBound bound : bounds) {
+        consistent = consistent && bound.estimate(current) == 0;
+      }
+    }
+    t.checkExpect(consistent, true);
+  }
+
+  // To test that the depths kept by a state and its copies as they move match the
+  // depths walked again from the flooded regions
+  void testTrackDepths(Tester t) {
+    Random r = new Random(4);
+    for (int game = 0; game < 200; game++) {
+      FloodItWorld world = new FloodItWorld(2 + game % 13, 2 + r.nextInt(7), new Random(game));
+      FloodSearchState current = new FloodSearchState(RegionGraph.of(world));
+      current.move(r.nextInt(current.graph.numColor));
+      current.trackDepths();
+      while (!current.isSolved()) {
+        FloodSearchState copy = current.copy();
+        int before = current.depths.maxDepth;
+        copy.move(r.nextInt(copy.graph.numColor));
+        t.checkExpect(current.depths.maxDepth, before);
+        current = copy;
+        FloodAnalytics walked = new FloodAnalytics(current.graph, current.flooded,
+            current.color);
+        t.checkExpect(current.depths.depth, walked.depth);
+        t.checkExpect(current.depths.maxDepth, walked.maxDepth);
+        t.checkExpect(current.depths.colorsLeft, current.colorsLeft);
+      }
+    }
+  }
+
+  // To test that no bound is more than the fewest moves that solve a small board
+  void testBoundsAdmissible(Tester t) {
+    IFloodBound bound = new MaxBound();
+    boolean admissible = true;
+    for (int game = 0; game < 300; game++) {
+      FloodItWorld world = new FloodItWorld(2 + game % 3, 2 + game % 4, new Random(game));
+      FloodSearchState start = new FloodSearchState(RegionGraph.of(world));
+      int fewest = 0;
+      while (!this.solvable(start, fewest)) {
+        fewest++;
+      }
+      admissible = admissible && bound.estimate(start) <= fewest;
+    }
+    t.checkExpect(admissible, true);
+  }
+
+  // To determine if the given state can be solved in at most the given number of
+  // moves, trying only moves that flood something
+  boolean solvable(FloodSearchState state, int movesLeft) {
+    if (state.isSolved()) {
+      return true;
+    }
+    if (movesLeft == 0) {
+      return false;
+    }
+    for (int color = 0; color < state.graph.numColor; color++) {
+      FloodSearchState next = state.copy();
+      if (next.move(color) > 0 && this.solvable(next, movesLeft - 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
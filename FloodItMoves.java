@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.awt.Color;
+import tester.Tester;
+
+// Represents what picking each color would do to a board, by color index
+class MoveGains {
+  // The color index of the origin, which is not a move
+  int originColor;
+  // The number of cells each color would flood
+  int[] cells;
+  // The number of separate regions each color would flood
+  int[] regions;
+  // If each color would leave no cells of that color outside the flooded region
+  boolean[] eliminates;
+  // The number of cells outside the flooded region, for each color
+  int[] remaining;
+
+  MoveGains(int numColor) {
+    this.cells = new int[numColor];
+    this.regions = new int[numColor];
+    this.eliminates = new boolean[numColor];
+    this.remaining = new int[numColor];
+  }
+
+  // To get the color that floods the most cells, the lowest index on a tie, or -1
+  // if no color floods anything
+  int bestByCells() {
+    int best = -1;
+    for (int color = 0; color < this.cells.length; color++) {
+      if (this.cells[color] > 0 && (best < 0 || this.cells[color] > this.cells[best])) {
+        best = color;
+      }
+    }
+    return best;
+  }
+
+  // To get a color that removes a color from the board, preferring the one that
+  // floods the most cells, and otherwise the color that floods the most cells
+  int bestByColorsRemoved() {
+    int best = -1;
+    for (int color = 0; color < this.cells.length; color++) {
+      if (this.eliminates[color] && (best < 0 || this.cells[color] > this.cells[best])) {
+        best = color;
+      }
+    }
+    if (best < 0) {
+      return this.bestByCells();
+    }
+    return best;
+  }
+
+  // To get the colors that flood anything, the ones that remove a color first and
+  // then by the number of cells they flood, for ordering moves in a search
+  int[] ordered() {
+    int count = 0;
+    for (int color = 0; color < this.cells.length; color++) {
+      if (this.cells[color] > 0) {
+        count++;
+      }
+    }
+    int[] moves = new int[count];
+    int next = 0;
+    for (int color = 0; color < this.cells.length; color++) {
+      if (this.cells[color] > 0) {
+        // Insert the color after every move that is at least as good
+        int at = next;
+        while (at > 0 && this.better(color, moves[at - 1])) {
+          moves[at] = moves[at - 1];
+          at--;
+        }
+        moves[at] = color;
+        next++;
+      }
+    }
+    return moves;
+  }
+
+  // To determine if the first color is a strictly better move than the second
+  boolean better(int color, int other) {
+    if (this.eliminates[color] != this.eliminates[other]) {
+      return this.eliminates[color];
+    }
+    return this.cells[color] > this.cells[other];
+  }
+}
+
+// Scores every color of a board in one walk of the flooded region and its
+// frontier, instead of flooding a copy of the board once for each color
+class MoveGainEvaluator {
+  // Size of the board the buffers fit
+  int boardSize;
+  // When each cell was last visited
+  int[] visited;
+  // The current visit, so that the buffers do not need clearing
+  int visit;
+  // The cells waiting to be walked, as y * boardSize + x
+  int[] stack;
+
+  MoveGainEvaluator() {
+    this.boardSize = 0;
+    this.visit = 0;
+  }
+
+  // To score every color of the given board
+  MoveGains evaluate(FloodItWorld world) {
+    this.fit(world.boardSize);
+    this.visit++;
+    int size = world.boardSize;
+    ArrayList<ArrayList<Cell>> board = world.board;
+    Color origin = board.get(0).get(0).color;
+    MoveGains gains = new MoveGains(world.numColor);
+    gains.originColor = FloodItWorld.COLORS.indexOf(origin);
+
+    // Walk the flooded region: the flooded cells and the cells of the origin
+    // color they touch, which the waterfall floods without a click. Any other
+    // cell it touches starts a region the matching color would flood.
+    int regionVisit = this.visit;
+    this.visit++;
+    int frontierVisit = this.visit;
+    int top = 0;
+    this.stack[top++] = 0;
+    this.visited[0] = regionVisit;
+    while (top > 0) {
+      int index = this.stack[--top];
+      int x = index % size;
+      int y = index / size;
+      for (int side = 0; side < 4; side++) {
+        int next = this.neighbor(x, y, side, size);
+        if (next >= 0 && this.visited[next] != regionVisit && this.visited[next] != frontierVisit) {
+          Cell cell = board.get(next / size).get(next % size);
+          if (cell.flooded || cell.color.equals(origin)) {
+            this.visited[next] = regionVisit;
+            this.stack[top++] = next;
+          }
+          else {
+            int color = FloodItWorld.COLORS.indexOf(cell.color);
+            gains.regions[color]++;
+            gains.cells[color] += this.absorb(board, next, cell.color, frontierVisit,
+                regionVisit);
+          }
+        }
+      }
+    }
+
+    // Count the cells left outside the region to find the colors a move removes
+    int index = 0;
+    for (ArrayList<Cell> row : board) {
+      for (Cell cell : row) {
+        if (this.visited[index] != regionVisit) {
+          gains.remaining[FloodItWorld.COLORS.indexOf(cell.color)]++;
+        }
+        index++;
+      }
+    }
+    for (int color = 0; color < world.numColor; color++) {
+      gains.eliminates[color] = gains.cells[color] > 0
+          && gains.cells[color] == gains.remaining[color];
+    }
+    return gains;
+  }
+
+  // To count the cells of the region of the given color that starts at the given
+  // cell, marking them with the frontier visit. Uses the top of the stack above
+  // the cells of the flooded region still waiting to be walked.
+  // EFFECT: Mutates the visited buffer
+  int absorb(ArrayList<ArrayList<Cell>> board, int start, Color color, int frontierVisit,
+      int regionVisit) {
+    int size = this.boardSize;
+    int count = 0;
+    int top = this.stack.length - 1;
+    this.stack[top] = start;
+    this.visited[start] = frontierVisit;
+    while (top < this.stack.length) {
+      int index = this.stack[top++];
+      count++;
+      int x = index % size;
+      int y = index / size;
+      for (int side = 0; side < 4; side++) {
+        int next = this.neighbor(x, y, side, size);
+        if (next >= 0 && this.visited[next] != frontierVisit && this.visited[next] != regionVisit) {
+          Cell cell = board.get(next / size).get(next % size);
+          if (!cell.flooded && cell.color.equals(color)) {
+            this.visited[next] = frontierVisit;
+            this.stack[--top] = next;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  // To get the index of the neighbor of the given cell on the given side (left,
+  // top, right, bottom), or -1 if it is off the board
+  int neighbor(int x, int y, int side, int size) {
+    if (side == 0) {
+      return x > 0 ? y * size + x - 1 : -1;
+    }
+    if (side == 1) {
+      return y > 0 ? (y - 1) * size + x : -1;
+    }
+    if (side == 2) {
+      return x < size - 1 ? y * size + x + 1 : -1;
+    }
+    return y < size - 1 ? (y + 1) * size + x : -1;
+  }
+
+  // To make the buffers fit a board of the given size
+  // EFFECT: Replaces the buffers if the size changed
+  void fit(int size) {
+    if (this.boardSize != size) {
+      this.boardSize = size;
+      this.visited = new int[size * size];
+      this.stack = new int[size * size];
+      this.visit = 0;
+    }
+  }
+}
+
+// Represents examples of scoring moves
+class ExamplesFloodItMoves {
+  ExamplesFloodItMoves() {
+  }
+
+  FloodItWorld world;
+  MoveGainEvaluator evaluator;
+
+  void InitMoves() {
+    this.world = ExamplesFloodItWorld.exampleWorld();
+    this.evaluator = new MoveGainEvaluator();
+  }
+
+  // To test the evaluate method on the example board
+  void testEvaluate(Tester t) {
+    this.InitMoves();
+    MoveGains gains = this.evaluator.evaluate(this.world);
+    t.checkExpect(gains.originColor, 2);
+    t.checkExpect(gains.cells, new int[] { 3, 2, 0, 0 });
+    t.checkExpect(gains.regions, new int[] { 1, 1, 0, 0 });
+    t.checkExpect(gains.remaining, new int[] { 3, 3, 1, 1 });
+    t.checkExpect(gains.eliminates, new boolean[] { true, false, false, false });
+    this.world.pickColor(Color.RED);
+    this.world.floodCompletely();
+    gains = this.evaluator.evaluate(this.world);
+    t.checkExpect(gains.cells, new int[] { 0, 3, 1, 1 });
+    t.checkExpect(gains.regions, new int[] { 0, 2, 1, 1 });
+    t.checkExpect(gains.eliminates, new boolean[] { false, true, true, true });
+  }
+
+  // To test the bestByCells, bestByColorsRemoved, and ordered methods
+  void testBest(Tester t) {
+    MoveGains gains = new MoveGains(4);
+    t.checkExpect(gains.bestByCells(), -1);
+    t.checkExpect(gains.ordered(), new int[] {});
+    gains.cells = new int[] { 2, 0, 5, 2 };
+    gains.eliminates = new boolean[] { false, false, false, true };
+    t.checkExpect(gains.bestByCells(), 2);
+    t.checkExpect(gains.bestByColorsRemoved(), 3);
+    t.checkExpect(gains.ordered(), new int[] { 3, 2, 0 });
+    gains.eliminates = new boolean[] { false, false, false, false };
+    t.checkExpect(gains.bestByColorsRemoved(), 2);
+  }
+
+  // To test the evaluate method against flooding a copy for each color
+  void testEvaluateMatchesFlooding(Tester t) {
+    this.evaluator = new MoveGainEvaluator();
+    Random r = new Random(3);
+    for (int game = 0; game < 50; game++) {
+      this.world = new FloodItWorld(2 + r.nextInt(12), 2 + r.nextInt(7), new Random(game));
+      this.world.floodCompletely();
+      while (this.world.numClicks < this.world.maxClicks) {
+        MoveGains gains = this.evaluator.evaluate(this.world);
+        int before = this.world.countFlooded();
+        for (int color = 0; color < this.world.numColor; color++) {
+          if (color != gains.originColor) {
+            t.checkExpect(this.floodedWith(color) - before, gains.cells[color]);
+          }
+        }
+        this.world.pickColor(FloodItWorld.COLORS.get(r.nextInt(this.world.numColor)));
+        this.world.floodCompletely();
+      }
+    }
+  }
+
+  // To count the cells the board would have flooded after picking the given color,
+  // leaving the board as it was
+  int floodedWith(int color) {
+    int size = this.world.boardSize;
+    Color[] colors = new Color[size * size];
+    boolean[] flooded = new boolean[size * size];
+    for (int i = 0; i < size * size; i++) {
+      colors[i] = this.world.board.get(i / size).get(i % size).color;
+      flooded[i] = this.world.board.get(i / size).get(i % size).flooded;
+    }
+    this.world.board.get(0).get(0).color = FloodItWorld.COLORS.get(color);
+    this.world.floodCompletely();
+    int count = this.world.countFlooded();
+    for (int i = 0; i < size * size; i++) {
+      this.world.board.get(i / size).get(i % size).color = colors[i];
+      this.world.board.get(i / size).get(i % size).flooded = flooded[i];
+    }
+    return count;
+  }
+}
@@ -0,0 +1,649 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+import java.awt.Color;
+import tester.Tester;
+
+// Represents a finished game of flood it
+class GameResult {
+  // Size of the board (Represents both the number of rows and columns)
+  int boardSize;
+  // Number of colors
+  int numColor;
+  // Number of user clicks
+  int numClicks;
+  // The time the game took in seconds
+  int clock;
+  // If the player flooded the whole board
+  boolean won;
+  // When the game finished, in milliseconds since the epoch
+  long finishedAt;
+  // The position of the game in the log, which breaks ties between equal games
+  long sequence;
+
+  GameResult(int boardSize, int numColor, int numClicks, int clock, boolean won,
+      long finishedAt) {
+    this.boardSize = boardSize;
+    this.numColor = numColor;
+    this.numClicks = numClicks;
+    this.clock = clock;
+    this.won = won;
+    this.finishedAt = finishedAt;
+    this.sequence = -1;
+  }
+
+  // The number of bytes written by writeTo
+  static final int BYTES = 4 * 4 + 1 + 8 + 8;
+
+  // To write this result
+  // EFFECT: Writes BYTES bytes to the given buffer
+  void writeTo(ByteBuffer buffer) {
+    buffer.putInt(this.boardSize);
+    buffer.putInt(this.numColor);
+    buffer.putInt(this.numClicks);
+    buffer.putInt(this.clock);
+    buffer.put((byte) (this.won ? 1 : 0));
+    buffer.putLong(this.finishedAt);
+    buffer.putLong(this.sequence);
+  }
+
+  // To read a result written by writeTo
+  // EFFECT: Reads BYTES bytes from the given buffer
+  static GameResult readFrom(ByteBuffer buffer) {
+    GameResult result = new GameResult(buffer.getInt(), buffer.getInt(), buffer.getInt(),
+        buffer.getInt(), buffer.get() == 1, buffer.getLong());
+    result.sequence = buffer.getLong();
+    return result;
+  }
+}
+
+// Orders finished games from best to worst: fewer clicks, then less time, then
+// the one finished first
+class GameResultRanking implements Comparator<GameResult> {
+  // To compare two finished games
+  public int compare(GameResult a, GameResult b) {
+    if (a.numClicks != b.numClicks) {
+      return Integer.compare(a.numClicks, b.numClicks);
+    }
+    if (a.clock != b.clock) {
+      return Integer.compare(a.clock, b.clock);
+    }
+    return Long.compare(a.sequence, b.sequence);
+  }
+}
+
+// Represents the won games of every board size and number of colors, each kept
+// sorted so that adding a game and finding the best ones take logarithmic time
+class Leaderboards {
+  // The won games, by board size and number of colors (see key)
+  HashMap<Long, TreeSet<GameResult>> boards;
+  // The number of games added, won or not
+  long count;
+
+  Leaderboards() {
+    this.boards = new HashMap<Long, TreeSet<GameResult>>();
+    this.count = 0;
+  }
+
+  // To get the key of the leaderboard of the given board size and number of colors
+  static long key(int boardSize, int numColor) {
+    return ((long) boardSize << 32) | numColor;
+  }
+
+  // To add a finished game, giving it the next sequence number if it has none
+  // EFFECT: Adds the game to its leaderboard if it was won
+  void add(GameResult result) {
+    if (result.sequence < 0) {
+      result.sequence = this.count;
+    }
+    this.count = Math.max(this.count, result.sequence + 1);
+    if (result.won) {
+      long key = key(result.boardSize, result.numColor);
+      TreeSet<GameResult> board = this.boards.get(key);
+      if (board == null) {
+        board = new TreeSet<GameResult>(new GameResultRanking());
+        this.boards.put(key, board);
+      }
+      board.add(result);
+    }
+  }
+
+  // To get at most k of the best won games of the given board size and number of
+  // colors, best first
+  ArrayList<GameResult> top(int boardSize, int numColor, int k) {
+    ArrayList<GameResult> best = new ArrayList<GameResult>();
+    TreeSet<GameResult> board = this.boards.get(key(boardSize, numColor));
+    if (board != null) {
+      Iterator<GameResult> games = board.iterator();
+      while (best.size() < k && games.hasNext()) {
+        best.add(games.next());
+      }
+    }
+    return best;
+  }
+
+  // To get every won game
+  ArrayList<GameResult> all() {
+    ArrayList<GameResult> all = new ArrayList<GameResult>();
+    for (TreeSet<GameResult> board : this.boards.values()) {
+      all.addAll(board);
+    }
+    return all;
+  }
+}
+
+// Represents a request to the writer of a SessionStore: a game to write, a flush
+// to wait for, or the end of the writer
+class PendingWrite {
+  // The game to write, or null
+  GameResult result;
+  // Counted down once everything before this request is on disk, or null
+  CountDownLatch done;
+
+  PendingWrite(GameResult result, CountDownLatch done) {
+    this.result = result;
+    this.done = done;
+  }
+}
+
+// Represents the finished games saved on disk in a directory, and their
+// leaderboards.
+//
+// Every game is appended to games.log as one record: a marker byte, the game,
+// and a CRC32 of both. Records are written in batches by a background thread, with
+// one sync per batch, so recording a game never waits for the disk. A record cut
+// short by a crash fails its check and is dropped when the store is opened.
+//
+// Every snapshotEvery games the leaderboards are saved to leaderboards.snapshot
+// with the length of the log they cover, so opening the store reads the snapshot
+// and only the records after it.
+class SessionStore {
+  // The marker at the start of every record
+  static final byte RECORD = 'G';
+  // The number of bytes in every record
+  static final int RECORD_BYTES = 1 + GameResult.BYTES + 4;
+  // The marker at the start of the snapshot
+  static final int SNAPSHOT = 0x464C4453;
+
+  // The directory of the log and the snapshot
+  File directory;
+  // The log of every finished game
+  FileChannel log;
+  // The length of the log that has been written
+  long logLength;
+  // The number of damaged bytes skipped when the log was read
+  long damaged;
+  // The leaderboards of every game in the log, only changed by the writer
+  Leaderboards index;
+  // The number of games between snapshots
+  int snapshotEvery;
+  // The number of games written since the last snapshot
+  int sinceSnapshot;
+  // The requests waiting for the writer
+  LinkedBlockingQueue<PendingWrite> pending;
+  // The thread writing the log
+  Thread writer;
+  // If the store has been closed, after which it takes no more games
+  boolean closed;
+
+  SessionStore(File directory, int snapshotEvery) throws IOException {
+    this.directory = directory;
+    this.snapshotEvery = snapshotEvery;
+    this.sinceSnapshot = 0;
+    this.damaged = 0;
+    this.closed = false;
+    this.pending = new LinkedBlockingQueue<PendingWrite>();
+    directory.mkdirs();
+    this.index = new Leaderboards();
+    long covered = this.readSnapshot();
+    this.log = FileChannel.open(new File(directory, "games.log").toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.logLength = this.replay(Math.min(covered, this.log.size()));
+    this.writer = new Thread(() -> this.writeLoop(), "FloodIt session store");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  // To open the store in the given directory, taking a snapshot every 256 games
+  static SessionStore open(File directory) throws IOException {
+    return new SessionStore(directory, 256);
+  }
+
+  // To save a finished game without waiting for the disk, producing false if the
+  // store is closed and the game is not saved
+  // EFFECT: Queues the game for the writer
+  synchronized boolean record(GameResult result) {
+    if (this.closed) {
+      return false;
+    }
+    this.pending.add(new PendingWrite(result, null));
+    return true;
+  }
+
+  // To get at most k of the best won games of the given board size and number of
+  // colors that have been written, best first
+  ArrayList<GameResult> top(int boardSize, int numColor, int k) {
+    synchronized (this.index) {
+      return this.index.top(boardSize, numColor, k);
+    }
+  }
+
+  // To wait until every game recorded so far is written
+  synchronized void flush() throws InterruptedException {
+    if (this.closed) {
+      throw new IllegalStateException("The session store is closed");
+    }
+    CountDownLatch done = new CountDownLatch(1);
+    this.pending.add(new PendingWrite(null, done));
+    done.await();
+  }
+
+  // To close this store when the program exits, which is how a game window
+  // stops, so that the games waiting for the writer are not lost
+  // EFFECT: Adds a shutdown hook
+  void closeOnExit() {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        this.close();
+      }
+      catch (IOException e) {
+        System.err.println("Could not save finished games: " + e.getMessage());
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "FloodIt session store shutdown"));
+  }
+
+  // To write every game recorded so far, save a snapshot, and stop the writer,
+  // unless the store is already closed. Games recorded after this are rejected.
+  // EFFECT: Closes the log
+  synchronized void close() throws IOException, InterruptedException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.pending.add(new PendingWrite(null, null));
+    this.writer.join();
+    this.writeSnapshot();
+    this.log.close();
+  }
+
+  // To write the queued games in batches until the store is closed
+  // EFFECT: Appends to the log, and updates the index and the snapshot
+  void writeLoop() {
+    ArrayList<PendingWrite> batch = new ArrayList<PendingWrite>();
+    boolean running = true;
+    while (running) {
+      try {
+        batch.add(this.pending.take());
+        this.pending.drainTo(batch);
+        ArrayList<GameResult> results = new ArrayList<GameResult>();
+        for (PendingWrite write : batch) {
+          if (write.result != null) {
+            results.add(write.result);
+          }
+          else if (write.done == null) {
+            running = false;
+          }
+        }
+        this.append(results);
+        if (this.sinceSnapshot >= this.snapshotEvery) {
+          this.writeSnapshot();
+        }
+      }
+      catch (InterruptedException e) {
+        running = false;
+      }
+      catch (IOException e) {
+        // The games of this batch are lost, but the log stays readable
+        System.err.println("Could not save finished games: " + e.getMessage());
+      }
+      for (PendingWrite write : batch) {
+        if (write.done != null) {
+          write.done.countDown();
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  // To append the given games to the log with one sync, then add them to the index
+  // EFFECT: Writes to the log and mutates the index
+  void append(ArrayList<GameResult> results) throws IOException {
+    if (results.isEmpty()) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * results.size());
+    synchronized (this.index) {
+      for (GameResult result : results) {
+        result.sequence = this.index.count + (buffer.position() / RECORD_BYTES);
+        int start = buffer.position();
+        buffer.put(RECORD);
+        result.writeTo(buffer);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start, RECORD_BYTES - 4);
+        buffer.putInt((int) crc.getValue());
+      }
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      this.logLength += this.log.write(buffer, this.logLength);
+    }
+    this.log.force(false);
+    synchronized (this.index) {
+      for (GameResult result : results) {
+        this.index.add(result);
+      }
+    }
+    this.sinceSnapshot += results.size();
+  }
+
+  // To read the records of the log from the given position into the index and
+  // produce the length of the log. A damaged record is skipped by looking for the
+  // next marker that starts a record with a correct check, so one bad record does
+  // not lose the games after it. Only the bytes after the last good record, such
+  // as a record cut short by a crash, are dropped.
+  // EFFECT: Mutates the index and the damaged count, and may shorten the log
+  long replay(long from) throws IOException {
+    long size = this.log.size();
+    ByteBuffer tail = ByteBuffer.allocate((int) (size - from));
+    while (tail.hasRemaining() && this.log.read(tail, from + tail.position()) > 0) {
+      // Keep reading until the buffer is full or the log ends
+    }
+    byte[] bytes = tail.array();
+    int position = 0;
+    int end = 0;
+    while (position + RECORD_BYTES <= tail.position()) {
+      if (this.check(bytes, position)) {
+        this.damaged += position - end;
+        this.index.add(GameResult.readFrom(ByteBuffer.wrap(bytes, position + 1,
+            GameResult.BYTES)));
+        position += RECORD_BYTES;
+        end = position;
+      }
+      else {
+        position++;
+      }
+    }
+    long length = from + end;
+    if (size > length) {
+      this.log.truncate(length);
+    }
+    return length;
+  }
+
+  // To determine if the given bytes have a complete record with a correct check at
+  // the given position
+  boolean check(byte[] bytes, int start) {
+    if (bytes[start] != RECORD) {
+      return false;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes, start, RECORD_BYTES - 4);
+    return ByteBuffer.wrap(bytes, start + RECORD_BYTES - 4, 4).getInt() == (int) crc.getValue();
+  }
+
+  // To save the index and the length of the log it covers. The snapshot is written
+  // next to the old one and then moved over it, so a crash leaves one of the two.
+  // EFFECT: Replaces the snapshot file
+  void writeSnapshot() throws IOException {
+    ArrayList<GameResult> all;
+    long covered;
+    long count;
+    synchronized (this.index) {
+      all = this.index.all();
+      covered = this.logLength;
+      count = this.index.count;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + 8 + 4 + GameResult.BYTES * all.size() + 4);
+    buffer.putInt(SNAPSHOT);
+    buffer.putLong(covered);
+    buffer.putLong(count);
+    buffer.putInt(all.size());
+    for (GameResult result : all) {
+      result.writeTo(buffer);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc.getValue());
+    File temporary = new File(this.directory, "leaderboards.snapshot.tmp");
+    try (RandomAccessFile file = new RandomAccessFile(temporary, "rw")) {
+      file.setLength(0);
+      file.write(buffer.array());
+      file.getFD().sync();
+    }
+    Files.move(temporary.toPath(), new File(this.directory, "leaderboards.snapshot").toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this.sinceSnapshot = 0;
+  }
+
+  // To read the snapshot into the index, producing the length of the log it
+  // covers, or 0 if there is no usable snapshot
+  // EFFECT: Mutates the index
+  long readSnapshot() throws IOException {
+    File file = new File(this.directory, "leaderboards.snapshot");
+    if (!file.exists()) {
+      return 0;
+    }
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    if (bytes.length < 28) {
+      return 0;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length - 4);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (buffer.getInt() != SNAPSHOT
+        || ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt() != (int) crc.getValue()) {
+      return 0;
+    }
+    long covered = buffer.getLong();
+    long count = buffer.getLong();
+    int size = buffer.getInt();
+    for (int i = 0; i < size; i++) {
+      this.index.add(GameResult.readFrom(buffer));
+    }
+    this.index.count = count;
+    return covered;
+  }
+}
+
+// Represents examples of saving finished games
+class ExamplesFloodItScores {
+  ExamplesFloodItScores() {
+  }
+
+  File directory;
+
+  void InitDirectory() throws IOException {
+    this.directory = Files.createTempDirectory("floodit-scores").toFile();
+  }
+
+  // To delete the directory made by InitDirectory and the files in it
+  void DeleteDirectory() {
+    for (File file : this.directory.listFiles()) {
+      file.delete();
+    }
+    this.directory.delete();
+  }
+
+  // To test the add and top methods of Leaderboards
+  void testLeaderboards(Tester t) {
+    Leaderboards boards = new Leaderboards();
+    boards.add(new GameResult(14, 6, 20, 50, true, 0));
+    boards.add(new GameResult(14, 6, 18, 70, true, 0));
+    boards.add(new GameResult(14, 6, 18, 40, true, 0));
+    boards.add(new GameResult(14, 6, 10, 10, false, 0));
+    boards.add(new GameResult(10, 6, 5, 5, true, 0));
+    boards.add(new GameResult(14, 6, 18, 40, true, 0));
+    ArrayList<GameResult> top = boards.top(14, 6, 3);
+    t.checkExpect(top.size(), 3);
+    t.checkExpect(top.get(0).clock, 40);
+    t.checkExpect(top.get(0).sequence, 2L);
+    t.checkExpect(top.get(1).sequence, 5L);
+    t.checkExpect(top.get(2).clock, 70);
+    t.checkExpect(boards.top(14, 6, 10).size(), 4);
+    t.checkExpect(boards.top(3, 3, 10).size(), 0);
+    t.checkExpect(boards.count, 6L);
+  }
+
+  // To test recording games and opening the store again
+  void testRecordAndReopen(Tester t) throws Exception {
+    this.InitDirectory();
+    SessionStore store = new SessionStore(this.directory, 1000);
+    store.record(new GameResult(5, 4, 9, 30, true, 1));
+    store.record(new GameResult(5, 4, 7, 45, true, 2));
+    store.record(new GameResult(5, 4, 12, 20, false, 3));
+    store.flush();
+    t.checkExpect(store.top(5, 4, 5).size(), 2);
+    t.checkExpect(store.top(5, 4, 5).get(0).numClicks, 7);
+    t.checkExpect(store.logLength, 3L * SessionStore.RECORD_BYTES);
+    store.close();
+
+    SessionStore reopened = new SessionStore(this.directory, 1000);
+    t.checkExpect(reopened.top(5, 4, 5).size(), 2);
+    t.checkExpect(reopened.index.count, 3L);
+    reopened.record(new GameResult(5, 4, 6, 60, true, 4));
+    reopened.flush();
+    t.checkExpect(reopened.top(5, 4, 1).get(0).sequence, 3L);
+    reopened.close();
+    this.DeleteDirectory();
+  }
+
+  // To test that only the records after the snapshot are read from the log
+  void testSnapshot(Tester t) throws Exception {
+    this.InitDirectory();
+    SessionStore store = new SessionStore(this.directory, 2);
+    for (int game = 0; game < 5; game++) {
+      store.record(new GameResult(8, 3, 10 + game, 30, true, game));
+      store.flush();
+    }
+    // Snapshots after the second and fourth games; the log has all five
+    SessionStore copy = new SessionStore(this.directory, 2);
+    t.checkExpect(copy.top(8, 3, 10).size(), 5);
+    t.checkExpect(copy.index.count, 5L);
+    copy.close();
+    store.close();
+    this.DeleteDirectory();
+  }
+
+  // To test that a record cut short by a crash is dropped
+  void testTornRecord(Tester t) throws Exception {
+    this.InitDirectory();
+    SessionStore store = new SessionStore(this.directory, 1000);
+    store.record(new GameResult(6, 5, 11, 30, true, 1));
+    store.flush();
+    store.log.write(ByteBuffer.wrap(new byte[] { SessionStore.RECORD, 0, 0, 0, 6 }),
+        store.logLength);
+    store.log.close();
+
+    SessionStore recovered = new SessionStore(this.directory, 1000);
+    t.checkExpect(recovered.top(6, 5, 5).size(), 1);
+    t.checkExpect(recovered.log.size(), (long) SessionStore.RECORD_BYTES);
+    recovered.close();
+    this.DeleteDirectory();
+  }
+
+  // To test that a damaged record in the middle of the log loses only that game
+  void testDamagedRecord(Tester t) throws Exception {
+    this.InitDirectory();
+    SessionStore store = new SessionStore(this.directory, 1000);
+    store.record(new GameResult(6, 5, 11, 30, true, 1));
+    store.record(new GameResult(6, 5, 12, 30, true, 2));
+    store.record(new GameResult(6, 5, 13, 30, true, 3));
+    store.flush();
+    // Damage the second record, then cut a fourth one short
+    store.log.write(ByteBuffer.wrap(new byte[] { 9 }), SessionStore.RECORD_BYTES + 6);
+    store.log.write(ByteBuffer.wrap(new byte[] { SessionStore.RECORD, 0, 0 }),
+        store.logLength);
+    store.log.close();
+
+    SessionStore recovered = new SessionStore(this.directory, 1000);
+    t.checkExpect(recovered.top(6, 5, 5).size(), 2);
+    t.checkExpect(recovered.top(6, 5, 5).get(1).numClicks, 13);
+    t.checkExpect(recovered.damaged, (long) SessionStore.RECORD_BYTES);
+    t.checkExpect(recovered.log.size(), 3L * SessionStore.RECORD_BYTES);
+    recovered.record(new GameResult(6, 5, 10, 30, true, 4));
+    recovered.close();
+    recovered.close();
+    // A closed store takes no more games
+    t.checkExpect(recovered.record(new GameResult(6, 5, 9, 30, true, 5)), false);
+    t.checkException(new IllegalStateException("The session store is closed"), recovered,
+        "flush");
+    SessionStore reopened = new SessionStore(this.directory, 1000);
+    t.checkExpect(reopened.top(6, 5, 5).size(), 3);
+    reopened.close();
+    this.DeleteDirectory();
+  }
+
+  // To test the recordResult method of FloodItWorld
+  void testRecordResult(Tester t) throws Exception {
+    this.InitDirectory();
+    FloodItWorld world = new FloodItWorld(3, 4, new Random(1));
+    world.store = new SessionStore(this.directory, 1000);
+    world.floodCompletely();
+    world.recordResult();
+    t.checkExpect(world.recorded, false);
+    world.pickColor(Color.RED);
+    world.floodCompletely();
+    world.pickColor(Color.ORANGE);
+    world.floodCompletely();
+    world.pickColor(Color.YELLOW);
+    world.floodCompletely();
+    world.pickColor(Color.GREEN);
+    world.floodCompletely();
+    t.checkExpect(world.isWinner(), true);
+    world.clock = 12;
+    world.recordResult();
+    world.recordResult();
+    t.checkExpect(world.recorded, true);
+    world.store.flush();
+    t.checkExpect(world.store.index.count, 1L);
+    t.checkExpect(world.store.top(3, 4, 5).get(0).numClicks, 4);
+    t.checkExpect(world.store.top(3, 4, 5).get(0).clock, 12);
+    world.onKeyEvent("r");
+    t.checkExpect(world.recorded, false);
+    world.store.close();
+    this.DeleteDirectory();
+  }
+
+  // To test that a game won on its last click is recorded as won, once the
+  // waterfall has reached every cell
+  void testRecordLastClickWin(Tester t) throws Exception {
+    this.InitDirectory();
+    FloodItWorld world = new FloodItWorld(3, 4, new Random(1));
+    world.store = new SessionStore(this.directory, 1000);
+    world.maxClicks = 4;
+    ManualTimeSource time = new ManualTimeSource();
+    world.scheduler = new FrameScheduler(time);
+    for (Color color : new Color[] { Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN }) {
+      world.pickColor(color);
+      t.checkExpect(world.recorded, false);
+      for (int tick = 0; tick < 4; tick++) {
+        time.advance(FrameScheduler.SECOND);
+        world.onTick();
+      }
+    }
+    t.checkExpect(world.settled, true);
+    t.checkExpect(world.recorded, true);
+    world.store.flush();
+    t.checkExpect(world.store.index.count, 1L);
+    t.checkExpect(world.store.top(3, 4, 5).size(), 1);
+    world.store.close();
+    this.DeleteDirectory();
+  }
+}
@@ -0,0 +1,1063 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import tester.Tester;
+
+// Creates the executors used to run one thread per connection. Tens of thousands
+// of connections need the virtual threads of Java 21; before that every
+// connection holds a platform thread, and the number of sessions is bounded by the
+// threads the machine can run.
+class ConnectionExecutors {
+  // To determine if the running JVM has virtual threads (Java 21+)
+  static boolean hasVirtualThreads() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    }
+    catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  // To create an executor that starts a virtual thread per task when the running
+  // JVM has them, and a cached pool of platform threads otherwise
+  static ExecutorService perConnection() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
+
+// Represents a bounded pool of boards shared by every session of the server. A
+// session only borrows one while a command needs the logic of FloodItWorld, so
+// the number of boards does not grow with the number of connections.
+class BoardPool {
+  // The boards that are not being used by a session
+  ArrayBlockingQueue<FloodItWorld> boards;
+
+  BoardPool(int capacity) {
+    this.boards = new ArrayBlockingQueue<FloodItWorld>(capacity);
+    for (int i = 0; i < capacity; i++) {
+      this.boards.add(new FloodItWorld(2, 2, new Random()));
+    }
+  }
+
+  // To take a board out of the pool, waiting until one is free
+  FloodItWorld acquire() {
+    try {
+      return this.boards.take();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a board", e);
+    }
+  }
+
+  // To give a board back to the pool
+  // EFFECT: Adds the board to the free boards
+  void release(FloodItWorld world) {
+    this.boards.add(world);
+  }
+}
+
+// Represents a connection watching a game, with the lines waiting to be written
+// to it. A spectator that falls too far behind gets one SYNC in place of its
+// backlog, so a slow connection never holds up the game or other spectators.
+class Spectator {
+  // The most lines kept waiting before they are replaced by a SYNC
+  static final int MAX_BEHIND = 256;
+  // The last line written to a spectator
+  static final String END = "BYE";
+
+  // The lines waiting to be written
+  LinkedBlockingQueue<String> lines;
+
+  Spectator() {
+    this.lines = new LinkedBlockingQueue<String>();
+  }
+
+  // To queue a line for this spectator, or the whole board of the given game if
+  // too many lines are waiting
+  // EFFECT: Adds to the waiting lines
+  void push(String line, GameSession session) {
+    if (this.lines.size() >= MAX_BEHIND) {
+      this.lines.clear();
+      this.lines.add(session.sync());
+    }
+    else {
+      this.lines.add(line);
+    }
+  }
+
+  // To wait for the next line to write
+  String next() throws InterruptedException {
+    return this.lines.take();
+  }
+
+  // To end the lines after the ones already waiting
+  // EFFECT: Adds the last line
+  void close() {
+    this.lines.add(END);
+  }
+}
+
+// Represents a single game played over the line protocol. A session only keeps
+// the color index of every cell, one bit per cell set if it is flooded, and its
+// clicks, so a connection costs a few bytes per cell and no cells. The board is
+// flooded in place: a move only walks the flooded cells and the cells next to
+// them, and the number of flooded cells is kept as it changes. A command that
+// needs the logic of FloodItWorld borrows a board from the pool and gives it back
+// before it replies. Every move is also sent to the spectators watching the game
+// from other connections.
+//
+// Commands (one per line):
+// NEW <size> <colors> [seed] starts a new game
+// MOVE <color index> floods the board with the given color
+// STATE describes the whole board
+// SOLVE suggests the moves that finish the game, without playing them
+// SYNC encodes the whole board for a spectator (see FloodDeltaEncoder)
+// DELTA encodes only what the last move changed, for spectators already in sync
+// GAME gives the id other connections use to watch this game
+// QUIT ends the session
+//
+// Another connection can send WATCH <game id> instead, after which the server
+// writes a SYNC and then a DELTA for every move of that game, and a SYNC for
+// every new game. Sending SYNC asks for the whole board again, and the last line
+// is BYE once the game's connection is gone.
+class GameSession {
+  // The largest board a session can play
+  static final int MAX_SIZE = 100;
+
+  // The pool to borrow boards from
+  BoardPool pool;
+  // The id spectators watch this game by
+  long id;
+  // Size of the board (Represents both the number of rows and columns)
+  int boardSize;
+  // Number of colors
+  int numColor;
+  // Number of moves played, and the most that are allowed
+  int numClicks;
+  int maxClicks;
+  // The color index of every cell, row by row, or null before the first NEW.
+  // Flooded cells have the color of the origin.
+  int[] colors;
+  // One bit for every cell, row by row, set if the cell is flooded
+  long[] flooded;
+  // The number of flooded cells
+  int floodedCount;
+  // Encodes the moves for spectators
+  FloodDeltaEncoder encoder;
+  // The encoding of the last move, shared by every spectator
+  byte[] lastDelta;
+  // The connections watching this game
+  ArrayList<Spectator> spectators;
+  // If the connection playing this game is gone
+  boolean closed;
+
+  GameSession(BoardPool pool, long id) {
+    this.pool = pool;
+    this.id = id;
+    this.colors = null;
+    this.spectators = new ArrayList<Spectator>();
+    this.closed = false;
+  }
+
+  // To handle one line of the protocol and produce the reply. Spectators reach
+  // the game from their own connections, so the game is locked while it changes.
+  synchronized String handle(String line) {
+    String[] words = line.trim().split("\\s+");
+    try {
+      if (words[0].equals("NEW")) {
+        return this.newGame(words);
+      }
+      if (words[0].equals("QUIT")) {
+        return "BYE";
+      }
+      if (words[0].equals("GAME")) {
+        return "GAME " + this.id;
+      }
+      if (this.colors == null) {
+        return "ERR no game, send NEW first";
+      }
+      if (words[0].equals("MOVE")) {
+        if (words.length != 2) {
+          return "ERR usage MOVE <color index>";
+        }
+        return this.move(Integer.parseInt(words[1]));
+      }
+      if (words[0].equals("STATE")) {
+        return this.state();
+      }
+      if (words[0].equals("SOLVE")) {
+        return this.solve();
+      }
+      if (words[0].equals("SYNC")) {
+        return this.sync();
+      }
+      if (words[0].equals("DELTA")) {
+        return "DELTA " + Base64.getEncoder().encodeToString(this.lastDelta);
+      }
+      return "ERR unknown command " + words[0];
+    }
+    catch (NumberFormatException e) {
+      return "ERR expected a number in " + line.trim();
+    }
+  }
+
+  // To start a new game from the words of a NEW command, with the same board as a
+  // FloodItWorld made with the same seed
+  String newGame(String[] words) {
+    if (words.length < 3 || words.length > 4) {
+      return "ERR usage NEW <size> <colors> [seed]";
+    }
+    int size = Integer.parseInt(words[1]);
+    int colorCount = Integer.parseInt(words[2]);
+    if (size < 2 || size > MAX_SIZE || colorCount < 2 || colorCount > 8) {
+      return "ERR size must be between 2 and " + MAX_SIZE + " and colors between 2 and 8";
+    }
+    Random r;
+    if (words.length == 4) {
+      r = new Random(Long.parseLong(words[3]));
+    }
+    else {
+      r = new Random();
+    }
+    this.boardSize = size;
+    this.numColor = colorCount;
+    this.numClicks = 0;
+    this.maxClicks = (int) ((size * 2.5) + (colorCount / 2));
+    this.colors = new BoardBuffer(size, colorCount, r).colors;
+    this.flooded = new long[(size * size + 63) / 64];
+    // Only the origin is flooded before the first spread
+    this.flooded[0] = 1;
+    this.floodedCount = 1;
+    this.spread(new int[size * size]);
+    this.encoder = new FloodDeltaEncoder(size);
+    this.lastDelta = this.encodeFull();
+    this.broadcast("SYNC " + Base64.getEncoder().encodeToString(this.lastDelta));
+    return "OK " + size + " " + colorCount + " " + this.maxClicks;
+  }
+
+  // To flood the board with the color at the given index as one user click
+  String move(int colorIndex) {
+    if (colorIndex < 0 || colorIndex >= this.numColor) {
+      return "ERR color must be between 0 and " + (this.numColor - 1);
+    }
+    if (!this.status().equals("PLAYING")) {
+      return "ERR game is over";
+    }
+    this.numClicks++;
+    this.colors[0] = colorIndex;
+    int[] changed = new int[this.boardSize * this.boardSize];
+    int changedCount = this.spread(changed);
+    this.lastDelta = this.encoder.encodeMove(colorIndex, changed, changedCount);
+    this.broadcast("DELTA " + Base64.getEncoder().encodeToString(this.lastDelta));
+    return "OK " + this.numClicks + " " + this.maxClicks + " " + this.floodedCount + " "
+        + this.status();
+  }
+
+  // To flood the board with the color of the origin once, the way
+  // FloodItWorld.floodCompletely does, walking only the flooded cells and the
+  // cells of that color next to them, and producing the number of cells it newly
+  // floods. A cell gets the color and is flooded as soon as it is reached, so no
+  // cell is reached twice.
+  // EFFECT: Mutates the colors, the flooded bits and the number of flooded cells,
+  // and puts the newly flooded cells at the start of the given array
+  int spread(int[] changed) {
+    int color = this.colors[0];
+    int[] queue = new int[this.boardSize * this.boardSize];
+    int tail = 0;
+    int count = 0;
+    queue[tail++] = 0;
+    for (int head = 0; head < tail; head++) {
+      for (int side = 0; side < 4; side++) {
+        int next = this.neighbor(queue[head], side);
+        if (next >= 0 && this.reaches(next, color)) {
+          if (!this.isFlooded(next)) {
+            this.flooded[next >> 6] |= 1L << next;
+            this.floodedCount++;
+            changed[count++] = next;
+          }
+          this.colors[next] = color;
+          queue[tail++] = next;
+        }
+      }
+    }
+    return count;
+  }
+
+  // To get the index of the cell on the given side (left, top, right, bottom) of
+  // the cell at the given index, or -1 past the edge of the board
+  int neighbor(int index, int side) {
+    int x = index % this.boardSize;
+    int y = index / this.boardSize;
+    if (side == 0) {
+      return x > 0 ? index - 1 : -1;
+    }
+    if (side == 1) {
+      return y > 0 ? index - this.boardSize : -1;
+    }
+    if (side == 2) {
+      return x < this.boardSize - 1 ? index + 1 : -1;
+    }
+    return y < this.boardSize - 1 ? index + this.boardSize : -1;
+  }
+
+  // To determine if a move to the given color walks through the cell at the given
+  // index: a flooded cell that does not have the color yet, or a cell of the
+  // color that is not flooded
+  boolean reaches(int index, int color) {
+    if (this.isFlooded(index)) {
+      return this.colors[index] != color;
+    }
+    return this.colors[index] == color;
+  }
+
+  // To determine if the cell at the given index is flooded
+  boolean isFlooded(int index) {
+    return (this.flooded[index >> 6] & (1L << index)) != 0;
+  }
+
+  // To describe the whole board: its size, colors, clicks, status, the color index
+  // of every cell and which cells are flooded
+  String state() {
+    StringBuilder cells = new StringBuilder();
+    StringBuilder floods = new StringBuilder();
+    for (int index = 0; index < this.colors.length; index++) {
+      cells.append(this.colors[index]);
+      floods.append(this.isFlooded(index) ? '1' : '0');
+    }
+    return "STATE " + this.boardSize + " " + this.numColor + " " + this.numClicks + " "
+        + this.maxClicks + " " + this.status() + " " + cells + " " + floods;
+  }
+
+  // To encode the whole board for a spectator that is joining or missed a move
+  String sync() {
+    return "SYNC " + Base64.getEncoder().encodeToString(this.encodeFull());
+  }
+
+  // To encode the whole board with the encoder of this game
+  byte[] encodeFull() {
+    int[] cells = new int[this.floodedCount];
+    int count = 0;
+    for (int index = 0; index < this.colors.length; index++) {
+      if (this.isFlooded(index)) {
+        cells[count++] = index;
+      }
+    }
+    return this.encoder.encodeFull(this.numColor, this.colors, cells, count);
+  }
+
+  // To send the given line to every spectator
+  // EFFECT: Queues the line for the spectators
+  void broadcast(String line) {
+    for (Spectator spectator : this.spectators) {
+      spectator.push(line, this);
+    }
+  }
+
+  // To start sending this game to the given spectator, beginning with the whole
+  // board if there is a game yet
+  // EFFECT: Adds the spectator and queues the board for it
+  synchronized void watch(Spectator spectator) {
+    if (this.closed) {
+      spectator.close();
+      return;
+    }
+    this.spectators.add(spectator);
+    if (this.colors != null) {
+      spectator.push(this.sync(), this);
+    }
+  }
+
+  // To send the whole board again to the given spectator, in place of whatever
+  // it has not been sent yet
+  // EFFECT: Replaces the lines waiting for the spectator
+  synchronized void resync(Spectator spectator) {
+    spectator.lines.clear();
+    if (this.colors != null) {
+      spectator.push(this.sync(), this);
+    }
+  }
+
+  // To stop sending this game to the given spectator
+  // EFFECT: Removes the spectator
+  synchronized void unwatch(Spectator spectator) {
+    this.spectators.remove(spectator);
+  }
+
+  // To end the game for every spectator
+  // EFFECT: Ends the lines of the spectators and removes them
+  synchronized void close() {
+    this.closed = true;
+    for (Spectator spectator : this.spectators) {
+      spectator.close();
+    }
+    this.spectators.clear();
+  }
+
+  // To suggest the moves that finish the game by always picking the color that
+  // floods the most cells, played on a board borrowed from the pool
+  String solve() {
+    StringBuilder moves = new StringBuilder("SOLVE");
+    MoveGainEvaluator evaluator = new MoveGainEvaluator();
+    FloodItWorld scratch = this.pool.acquire();
+    try {
+      this.copyTo(scratch);
+      int limit = this.boardSize * this.boardSize;
+      for (int step = 0; step < limit && scratch.countFlooded() < limit; step++) {
+        int best = evaluator.evaluate(scratch).bestByCells();
+        scratch.board.get(0).get(0).color = FloodItWorld.COLORS.get(best);
+        scratch.floodCompletely();
+        moves.append(" ").append(best);
+      }
+    }
+    finally {
+      this.pool.release(scratch);
+    }
+    return moves.toString();
+  }
+
+  // To determine whether the game is being played, won, or lost
+  String status() {
+    if (this.floodedCount == this.boardSize * this.boardSize) {
+      return "WON";
+    }
+    if (this.numClicks >= this.maxClicks) {
+      return "LOST";
+    }
+    return "PLAYING";
+  }
+
+  // To put this game on the given board, rebuilding its cells if it has a
+  // different size
+  // EFFECT: Mutates the fields and the cells of the given board
+  void copyTo(FloodItWorld scratch) {
+    scratch.numColor = this.numColor;
+    scratch.numClicks = this.numClicks;
+    scratch.maxClicks = this.maxClicks;
+    if (scratch.boardSize != this.boardSize) {
+      scratch.boardSize = this.boardSize;
+      scratch.board = scratch.initBoard();
+      scratch.addNeighbors();
+    }
+    int index = 0;
+    for (ArrayList<Cell> row : scratch.board) {
+      for (Cell cell : row) {
+        cell.color = FloodItWorld.COLORS.get(this.colors[index]);
+        cell.flooded = this.isFlooded(index);
+        index++;
+      }
+    }
+  }
+}
+
+// Represents a headless server hosting many flood it games over a local TCP
+// line protocol, with one thread per connection
+class FloodItServer {
+  // The port to listen on
+  int port;
+  // The boards shared by every session
+  BoardPool pool;
+  // Runs the connections, and the writers of the spectators
+  ExecutorService connections;
+  // The games being played, by id, for spectators to find
+  ConcurrentHashMap<Long, GameSession> games;
+  // The id of the last game
+  AtomicLong lastGame;
+
+  FloodItServer(int port, int poolSize) {
+    this.port = port;
+    this.pool = new BoardPool(poolSize);
+    this.connections = ConnectionExecutors.perConnection();
+    this.games = new ConcurrentHashMap<Long, GameSession>();
+    this.lastGame = new AtomicLong();
+  }
+
+  // To accept connections until the server socket is closed
+  void serve() throws IOException {
+    try (ServerSocket server = new ServerSocket(this.port, 4096,
+        InetAddress.getLoopbackAddress())) {
+      while (!server.isClosed()) {
+        Socket socket = server.accept();
+        this.connections.execute(() -> this.serveConnection(socket));
+      }
+    }
+    finally {
+      this.connections.shutdown();
+    }
+  }
+
+  // To play one session over the given connection until the client quits or
+  // disconnects, or to watch another game if the first line is a WATCH
+  void serveConnection(Socket socket) {
+    try (Socket connection = socket;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(
+            new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+      connection.setTcpNoDelay(true);
+      String line = in.readLine();
+      if (line != null && line.trim().startsWith("WATCH")) {
+        this.watch(line.trim(), in, out);
+      }
+      else if (line != null) {
+        this.play(line, in, out);
+      }
+    }
+    catch (IOException e) {
+      // The client went away, so there is no one left to tell
+    }
+  }
+
+  // To play a new game, starting with the given first line, until the client
+  // quits or disconnects. The game can only be watched while it is being played.
+  void play(String first, BufferedReader in, BufferedWriter out) throws IOException {
+    GameSession session = new GameSession(this.pool, this.lastGame.incrementAndGet());
+    this.games.put(session.id, session);
+    try {
+      String line = first;
+      while (line != null) {
+        String reply = session.handle(line);
+        out.write(reply);
+        out.newLine();
+        out.flush();
+        if (reply.equals("BYE")) {
+          return;
+        }
+        line = in.readLine();
+      }
+    }
+    finally {
+      this.games.remove(session.id);
+      session.close();
+    }
+  }
+
+  // To send the game named by the given WATCH line to this connection until the
+  // spectator quits or disconnects. The lines are written by their own thread so
+  // that a SYNC sent by the spectator is read while they are being written.
+  void watch(String line, BufferedReader in, BufferedWriter out) throws IOException {
+    String[] words = line.split("\\s+");
+    GameSession game = null;
+    if (words.length == 2) {
+      try {
+        game = this.games.get(Long.parseLong(words[1]));
+      }
+      catch (NumberFormatException e) {
+        game = null;
+      }
+    }
+    if (game == null) {
+      out.write("ERR usage WATCH <game id> of a game being played");
+      out.newLine();
+      out.flush();
+      return;
+    }
+    Spectator spectator = new Spectator();
+    game.watch(spectator);
+    Future<?> writer = this.connections.submit(() -> this.writeLines(spectator, out));
+    try {
+      String request = in.readLine();
+      while (request != null && !request.trim().equals("QUIT")) {
+        if (request.trim().equals("SYNC")) {
+          game.resync(spectator);
+        }
+        request = in.readLine();
+      }
+    }
+    finally {
+      game.unwatch(spectator);
+      spectator.close();
+      try {
+        writer.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+        // The writer only stops early when the spectator went away
+      }
+    }
+  }
+
+  // To write the lines of the given spectator until its last line, flushing
+  // whenever no more lines are waiting
+  // EFFECT: Writes to the given writer
+  void writeLines(Spectator spectator, BufferedWriter out) {
+    try {
+      String line = spectator.next();
+      out.write(line);
+      out.newLine();
+      while (!line.equals(Spectator.END)) {
+        if (spectator.lines.isEmpty()) {
+          out.flush();
+        }
+        line = spectator.next();
+        out.write(line);
+        out.newLine();
+      }
+      out.flush();
+    }
+    catch (IOException e) {
+      // The spectator went away
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Usage: FloodItServer [port] [pool size]
+  public static void main(String[] args) throws IOException {
+    int port = 7070;
+    int poolSize = Runtime.getRuntime().availableProcessors() * 4;
+    if (args.length > 0) {
+      port = Integer.parseInt(args[0]);
+    }
+    if (args.length > 1) {
+      poolSize = Integer.parseInt(args[1]);
+    }
+    if (!ConnectionExecutors.hasVirtualThreads()) {
+      System.err.println("Virtual threads need Java 21: every connection holds a platform"
+          + " thread, so far fewer sessions fit than the tens of thousands they allow");
+    }
+    new FloodItServer(port, poolSize).serve();
+  }
+}
+
+// Represents a load generator that plays many concurrent sessions against a
+// running server and reports throughput and move latency
+class FloodItLoadClient {
+  // The server to connect to
+  String host;
+  int port;
+  // The number of concurrent sessions
+  int sessions;
+  // The number of games each session plays
+  int games;
+  // The size and number of colors of every game
+  int boardSize;
+  int numColor;
+  // The number of moves played by all the sessions
+  AtomicLong moves;
+
+  FloodItLoadClient(String host, int port, int sessions, int games, int boardSize,
+      int numColor) {
+    this.host = host;
+    this.port = port;
+    this.sessions = sessions;
+    this.games = games;
+    this.boardSize = boardSize;
+    this.numColor = numColor;
+    this.moves = new AtomicLong();
+  }
+
+  // To play every session and produce the report
+  String run() throws Exception {
+    ExecutorService executor = ConnectionExecutors.perConnection();
+    ArrayList<Future<long[]>> results = new ArrayList<Future<long[]>>();
+    long start = System.nanoTime();
+    for (int i = 0; i < this.sessions; i++) {
+      long seed = i;
+      results.add(executor.submit(() -> this.playSession(seed)));
+    }
+    ArrayList<long[]> latencies = new ArrayList<long[]>();
+    int total = 0;
+    int failed = 0;
+    for (Future<long[]> result : results) {
+      try {
+        long[] sessionLatencies = result.get();
+        latencies.add(sessionLatencies);
+        total += sessionLatencies.length;
+      }
+      catch (ExecutionException e) {
+        // The connection failed or the server went away; the other sessions still
+        // count
+        failed++;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    executor.shutdown();
+
+    long[] all = new long[total];
+    int next = 0;
+    for (long[] sessionLatencies : latencies) {
+      System.arraycopy(sessionLatencies, 0, all, next, sessionLatencies.length);
+      next += sessionLatencies.length;
+    }
+    Arrays.sort(all);
+    double seconds = elapsed / 1e9;
+    long p50 = all.length == 0 ? 0 : all[all.length / 2];
+    long p99 = all.length == 0 ? 0 : all[Math.min(all.length - 1, (int) (all.length * 0.99))];
+    return String.format(
+        "%d sessions (%d failed), %d moves in %.2fs: %.0f moves/s, p50 %.3fms, p99 %.3fms",
+        this.sessions, failed, total, seconds, total / seconds, p50 / 1e6, p99 / 1e6);
+  }
+
+  // To play every game of one session, producing the latency of each move in
+  // nanoseconds
+  long[] playSession(long seed) throws IOException {
+    Random r = new Random(seed);
+    long[] latencies = new long[64];
+    int count = 0;
+    try (Socket socket = new Socket(this.host, this.port);
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(
+            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      socket.setTcpNoDelay(true);
+      for (int game = 0; game < this.games; game++) {
+        this.send(out, "NEW " + this.boardSize + " " + this.numColor + " " + r.nextLong());
+        this.receive(in);
+        String status = "PLAYING";
+        while (status.equals("PLAYING")) {
+          long before = System.nanoTime();
+          this.send(out, "MOVE " + r.nextInt(this.numColor));
+          String reply = this.receive(in);
+          long after = System.nanoTime();
+          if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+          }
+          latencies[count] = after - before;
+          count++;
+          this.moves.incrementAndGet();
+          status = reply.substring(reply.lastIndexOf(' ') + 1);
+        }
+      }
+      this.send(out, "QUIT");
+      this.receive(in);
+    }
+    return Arrays.copyOf(latencies, count);
+  }
+
+  // To send one line to the server
+  // EFFECT: Writes the line to the given writer
+  void send(BufferedWriter out, String line) throws IOException {
+    out.write(line);
+    out.newLine();
+    out.flush();
+  }
+
+  // To read one line from the server
+  // EFFECT: Reads from the given reader
+  String receive(BufferedReader in) throws IOException {
+    String line = in.readLine();
+    if (line == null) {
+      throw new EOFException("The server closed the connection");
+    }
+    return line;
+  }
+
+  // Usage: FloodItLoadClient [host] [port] [sessions] [games] [size] [colors]
+  public static void main(String[] args) throws Exception {
+    String host = args.length > 0 ? args[0] : "localhost";
+    int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+    int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+    int games = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+    int boardSize = args.length > 4 ? Integer.parseInt(args[4]) : 14;
+    int numColor = args.length > 5 ? Integer.parseInt(args[5]) : 6;
+    System.out.println(
+        new FloodItLoadClient(host, port, sessions, games, boardSize, numColor).run());
+  }
+}
+
+// Represents a spectator that mirrors a game being played on a server, asking for
+// the whole board again whenever it sees that it missed a move
+class FloodItWatchClient {
+  // The mirrored board
+  FloodDeltaDecoder decoder;
+  // The number of times the whole board was asked for again
+  int resyncs;
+
+  FloodItWatchClient() {
+    this.decoder = new FloodDeltaDecoder();
+    this.resyncs = 0;
+  }
+
+  // To apply one line from the server, producing the line to send back, or null
+  // EFFECT: Mutates the mirrored board
+  String receive(String line) {
+    if (line.startsWith("SYNC ") || line.startsWith("DELTA ")) {
+      byte[] message = Base64.getDecoder().decode(line.substring(line.indexOf(' ') + 1));
+      if (!this.decoder.apply(message)) {
+        this.resyncs++;
+        return "SYNC";
+      }
+    }
+    return null;
+  }
+
+  // To watch the given game until the server ends it, printing the number of
+  // moves and flooded cells after every line
+  void watch(String host, int port, long game) throws IOException {
+    try (Socket socket = new Socket(host, port);
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(
+            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      out.write("WATCH " + game);
+      out.newLine();
+      out.flush();
+      String line = in.readLine();
+      while (line != null && !line.equals(Spectator.END) && !line.startsWith("ERR")) {
+        String reply = this.receive(line);
+        if (reply != null) {
+          out.write(reply);
+          out.newLine();
+          out.flush();
+        }
+        int flooded = 0;
+        for (boolean cell : this.decoder.flooded) {
+          if (cell) {
+            flooded++;
+          }
+        }
+        System.out.println(this.decoder.moves + " moves, " + flooded + " flooded");
+        line = in.readLine();
+      }
+      if (line != null && line.startsWith("ERR")) {
+        System.out.println(line);
+      }
+    }
+  }
+
+  // Usage: FloodItWatchClient <game id> [host] [port]
+  public static void main(String[] args) throws IOException {
+    long game = Long.parseLong(args[0]);
+    String host = args.length > 1 ? args[1] : "localhost";
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : 7070;
+    new FloodItWatchClient().watch(host, port, game);
+  }
+}
+
+// Represents examples of the game server
+class ExamplesFloodItServer {
+  ExamplesFloodItServer() {
+  }
+
+  BoardPool pool;
+  GameSession session;
+
+  void InitSession() {
+    this.pool = new BoardPool(1);
+    this.session = new GameSession(this.pool, 7);
+  }
+
+  // To test the NEW command
+  void testNewGame(Tester t) {
+    this.InitSession();
+    t.checkExpect(this.session.handle("MOVE 1"), "ERR no game, send NEW first");
+    t.checkExpect(this.session.handle("NEW 3 4 1"), "OK 3 4 9");
+    t.checkExpect(this.session.colors, ExamplesFloodItWorld.exampleColors());
+    t.checkExpect(this.session.floodedCount, 1);
+    t.checkExpect(this.session.handle("NEW 1 4"),
+        "ERR size must be between 2 and 100 and colors between 2 and 8");
+    t.checkExpect(this.session.handle("NEW 101 4"),
+        "ERR size must be between 2 and 100 and colors between 2 and 8");
+    t.checkExpect(this.session.boardSize, 3);
+    t.checkExpect(this.session.handle("NEW 3"), "ERR usage NEW <size> <colors> [seed]");
+    t.checkExpect(this.session.handle("NEW x 4"), "ERR expected a number in NEW x 4");
+    t.checkExpect(this.pool.boards.size(), 1);
+  }
+
+  // To test the MOVE command
+  void testMove(Tester t) {
+    this.InitSession();
+    this.session.handle("NEW 3 4 1");
+    // Same board as new FloodItWorld(3, 4, new Random(1)): the origin is yellow
+    // and the cells to its right and below are red and orange
+    t.checkExpect(this.session.handle("MOVE 0"), "OK 1 9 4 PLAYING");
+    t.checkExpect(this.session.handle("MOVE 9"), "ERR color must be between 0 and 3");
+    t.checkExpect(this.session.handle("MOVE 1"), "OK 2 9 7 PLAYING");
+    t.checkExpect(this.session.isFlooded(3), true);
+    t.checkExpect(this.session.handle("MOVE 1"), "OK 3 9 7 PLAYING");
+    t.checkExpect(this.session.handle("MOVE"), "ERR usage MOVE <color index>");
+    t.checkExpect(this.session.handle("MOVE 1 2"), "ERR usage MOVE <color index>");
+    t.checkExpect(this.pool.boards.size(), 1);
+  }
+
+  // To test that flooding a session in place gives the same boards as
+  // FloodItWorld.floodCompletely
+  void testMatchesFloodCompletely(Tester t) {
+    Random r = new Random(3);
+    for (int game = 0; game < 30; game++) {
+      int size = 2 + r.nextInt(20);
+      int colors = 2 + r.nextInt(7);
+      this.InitSession();
+      this.session.handle("NEW " + size + " " + colors + " " + game);
+      FloodItWorld world = new FloodItWorld(size, colors, new Random(game));
+      world.maxClicks = this.session.maxClicks;
+      world.floodCompletely();
+      while (this.session.status().equals("PLAYING")) {
+        int color = r.nextInt(colors);
+        this.session.handle("MOVE " + color);
+        world.pickColor(FloodItWorld.COLORS.get(color));
+        world.floodCompletely();
+        t.checkExpect(this.session.floodedCount, world.countFlooded());
+      }
+      t.checkExpect(this.session.colors, MultiFloodEngine.colorsOf(world));
+      for (int cell = 0; cell < size * size; cell++) {
+        t.checkExpect(this.session.isFlooded(cell),
+            world.board.get(cell / size).get(cell % size).flooded);
+      }
+    }
+  }
+
+  // To test the STATE command
+  void testState(Tester t) {
+    this.InitSession();
+    this.session.handle("NEW 3 4 1");
+    t.checkExpect(this.session.handle("STATE"), "STATE 3 4 0 9 PLAYING 201100123 100000000");
+  }
+
+  // To test the SOLVE command
+  void testSolve(Tester t) {
+    this.InitSession();
+    this.session.handle("NEW 3 4 1");
+    t.checkExpect(this.session.handle("SOLVE"), "SOLVE 0 1 2 3");
+    t.checkExpect(this.session.numClicks, 0);
+    t.checkExpect(this.pool.boards.size(), 1);
+    this.session.handle("MOVE 0");
+    this.session.handle("MOVE 1");
+    this.session.handle("MOVE 2");
+    t.checkExpect(this.session.handle("MOVE 3"), "OK 4 9 9 WON");
+    t.checkExpect(this.session.handle("MOVE 1"), "ERR game is over");
+  }
+
+  // To test the SYNC and DELTA commands
+  void testSyncAndDelta(Tester t) {
+    this.InitSession();
+    this.session.handle("NEW 3 4 1");
+    FloodDeltaDecoder decoder = new FloodDeltaDecoder();
+    decoder.apply(Base64.getDecoder().decode(this.session.handle("SYNC").substring(5)));
+    this.session.handle("MOVE 0");
+    t.checkExpect(this.session.handle("DELTA"), "DELTA "
+        + Base64.getEncoder().encodeToString(new byte[] { 'D', 1, 0, 2, 1, 1, 2, 2 }));
+    decoder.apply(Base64.getDecoder().decode(this.session.handle("DELTA").substring(6)));
+    t.checkExpect(decoder.flooded,
+        new boolean[] { true, true, false, false, true, true, false, false, false });
+    t.checkExpect(decoder.colorAt(2, 1), 0);
+  }
+
+  // To test the QUIT command and unknown commands
+  void testQuit(Tester t) {
+    this.InitSession();
+    t.checkExpect(this.session.handle("QUIT"), "BYE");
+    this.session.handle("NEW 2 2 5");
+    t.checkExpect(this.session.handle("JUMP"), "ERR unknown command JUMP");
+  }
+
+  // To test that the load client stops a session when the server goes away
+  void testReceive(Tester t) throws IOException {
+    FloodItLoadClient client = new FloodItLoadClient("localhost", 7070, 1, 1, 3, 4);
+    BufferedReader in = new BufferedReader(new StringReader("OK 3 4 9\n"));
+    t.checkExpect(client.receive(in), "OK 3 4 9");
+    t.checkException(new EOFException("The server closed the connection"), client, "receive",
+        in);
+  }
+
+  // To test that only a connection that plays registers a game, and only while it
+  // is being played
+  void testConnections(Tester t) throws IOException {
+    FloodItServer server = new FloodItServer(0, 1);
+    StringWriter watched = new StringWriter();
+    server.watch("WATCH 1", new BufferedReader(new StringReader("")),
+        new BufferedWriter(watched));
+    t.checkExpect(watched.toString().trim(), "ERR usage WATCH <game id> of a game being played");
+    t.checkExpect(server.games.isEmpty(), true);
+    t.checkExpect(server.lastGame.get(), 0L);
+    StringWriter played = new StringWriter();
+    server.play("NEW 3 4 1", new BufferedReader(new StringReader("GAME\nQUIT\n")),
+        new BufferedWriter(played));
+    t.checkExpect(played.toString().split("\\R")[1], "GAME 1");
+    t.checkExpect(server.games.isEmpty(), true);
+    server.connections.shutdown();
+  }
+
+  // To test that the moves of a game reach its spectators, and that a spectator
+  // that fell behind gets the whole board instead
+  void testSpectators(Tester t) {
+    this.InitSession();
+    t.checkExpect(this.session.handle("GAME"), "GAME 7");
+    Spectator early = new Spectator();
+    this.session.watch(early);
+    t.checkExpect(early.lines.size(), 0);
+    this.session.handle("NEW 3 4 1");
+    Spectator late = new Spectator();
+    this.session.watch(late);
+    this.session.handle("MOVE 0");
+    FloodItWatchClient earlyClient = new FloodItWatchClient();
+    while (!early.lines.isEmpty()) {
+      t.checkExpect(earlyClient.receive(early.lines.poll()), null);
+    }
+    FloodItWatchClient lateClient = new FloodItWatchClient();
+    t.checkExpect(late.lines.peek().startsWith("SYNC "), true);
+    while (!late.lines.isEmpty()) {
+      t.checkExpect(lateClient.receive(late.lines.poll()), null);
+    }
+    boolean[] flooded = { true, true, false, false, true, true, false, false, false };
+    t.checkExpect(earlyClient.decoder.flooded, flooded);
+    t.checkExpect(lateClient.decoder.flooded, flooded);
+    // A spectator too far behind gets one SYNC in place of its backlog
+    for (int i = 0; i < Spectator.MAX_BEHIND + 2; i++) {
+      late.push("DELTA", this.session);
+    }
+    t.checkExpect(late.lines.size(), 2);
+    t.checkExpect(late.lines.peek(), this.session.sync());
+    this.session.unwatch(late);
+    this.session.handle("MOVE 1");
+    t.checkExpect(late.lines.size(), 2);
+    this.session.close();
+    t.checkExpect(early.lines.poll().startsWith("DELTA "), true);
+    t.checkExpect(early.lines.poll(), Spectator.END);
+    Spectator after = new Spectator();
+    this.session.watch(after);
+    t.checkExpect(after.lines.poll(), Spectator.END);
+  }
+
+  // To test that a spectator that missed a move asks for the whole board again
+  void testWatchResync(Tester t) {
+    this.InitSession();
+    this.session.handle("NEW 3 4 1");
+    FloodItWatchClient client = new FloodItWatchClient();
+    t.checkExpect(client.receive(this.session.handle("DELTA")), null);
+    this.session.handle("MOVE 0");
+    this.session.handle("MOVE 1");
+    t.checkExpect(client.receive(this.session.handle("DELTA")), "SYNC");
+    t.checkExpect(client.resyncs, 1);
+    t.checkExpect(client.receive(this.session.handle("SYNC")), null);
+    t.checkExpect(client.decoder.moves, 2);
+    this.session.handle("MOVE 2");
+    t.checkExpect(client.receive(this.session.handle("DELTA")), null);
+    t.checkExpect(client.decoder.flooded[8], false);
+    t.checkExpect(client.decoder.colorAt(1, 2), 2);
+    t.checkExpect(client.receive("OK 3 9 8 PLAYING"), null);
+  }
+}
@@ -0,0 +1,292 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.awt.Color;
+import tester.Tester;
+
+// Represents a game state small enough to copy and hash millions of times. The
+// colors of the cells are packed 3 bits each, 21 to a long, as they were when the
+// state was encoded; they and the regions built from them are shared by every
+// copy and never change. A copy only owns one bit per region, set if the region
+// is flooded, and the color of the flooded region.
+class CompactFloodState {
+  // The number of cells packed in each long
+  static final int CELLS_PER_LONG = 21;
+
+  // Size of the board (Represents both the number of rows and columns)
+  int boardSize;
+  // Number of colors
+  int numColor;
+  // The color index of every cell when the state was encoded, row by row
+  long[] colors;
+  // The regions of those colors
+  RegionGraph graph;
+  // One bit for every region of the graph, set if the region is flooded
+  long[] flooded;
+  // The color index of the flooded region
+  int color;
+  // The hash of the colors, computed once for every copy
+  int colorsHash;
+
+  // To encode a board of the given size from the color index of every cell, row by
+  // row, with the region of the top left cell flooded
+  CompactFloodState(int boardSize, int numColor, int[] cells) {
+    if (numColor > 8) {
+      throw new IllegalArgumentException("At most 8 colors fit in 3 bits");
+    }
+    this.boardSize = boardSize;
+    this.numColor = numColor;
+    this.colors = new long[(cells.length + CELLS_PER_LONG - 1) / CELLS_PER_LONG];
+    for (int cell = 0; cell < cells.length; cell++) {
+      this.colors[cell / CELLS_PER_LONG] |= (long) cells[cell] << (cell % CELLS_PER_LONG * 3);
+    }
+    this.graph = RegionGraph.build(boardSize, numColor, cells);
+    this.flooded = new long[(this.graph.size() + 63) / 64];
+    this.flooded[0] = 1;
+    this.color = cells[0];
+    this.colorsHash = Arrays.hashCode(this.colors);
+  }
+
+  // Constructor used by copy
+  CompactFloodState(CompactFloodState state) {
+    this.boardSize = state.boardSize;
+    this.numColor = state.numColor;
+    this.colors = state.colors;
+    this.graph = state.graph;
+    this.flooded = state.flooded.clone();
+    this.color = state.color;
+    this.colorsHash = state.colorsHash;
+  }
+
+  // To encode the given world. Flooded cells count as the color of the origin even
+  // if the waterfall has not reached them yet.
+  static CompactFloodState of(FloodItWorld world) {
+    int[] cells = MultiFloodEngine.colorsOf(world);
+    int index = 0;
+    for (ArrayList<Cell> row : world.board) {
+      for (Cell cell : row) {
+        if (cell.flooded) {
+          cells[index] = cells[0];
+        }
+        index++;
+      }
+    }
+    return new CompactFloodState(world.boardSize, world.numColor, cells);
+  }
+
+  // To copy this state, sharing everything but the flooded regions
+  CompactFloodState copy() {
+    return new CompactFloodState(this);
+  }
+
+  // To get the color index the given cell had when the state was encoded
+  int packedColor(int cell) {
+    return (int) (this.colors[cell / CELLS_PER_LONG] >>> (cell % CELLS_PER_LONG * 3)) & 7;
+  }
+
+  // To determine if the given region is flooded
+  boolean isFloodedRegion(int region) {
+    return (this.flooded[region >> 6] & (1L << region)) != 0;
+  }
+
+  // To determine if the given cell is flooded
+  boolean isFlooded(int cell) {
+    return this.isFloodedRegion(this.graph.regionOf[cell]);
+  }
+
+  // To get the color index of the given cell
+  int colorAt(int cell) {
+    if (this.isFlooded(cell)) {
+      return this.color;
+    }
+    return this.packedColor(cell);
+  }
+
+  // To determine if every region is flooded
+  boolean isSolved() {
+    int count = 0;
+    for (long word : this.flooded) {
+      count += Long.bitCount(word);
+    }
+    return count == this.graph.size();
+  }
+
+  // To flood with the given color, producing the number of regions it floods.
+  // Regions of one color never touch, so the regions it floods are exactly the
+  // ones of that color next to the regions flooded before the move.
+  // EFFECT: Sets the bits of the regions it floods
+  int move(int newColor) {
+    this.color = newColor;
+    int absorbed = 0;
+    for (int word = 0; word < this.flooded.length; word++) {
+      long bits = this.flooded[word];
+      while (bits != 0) {
+        int region = word * 64 + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        for (int i = this.graph.neighborStart[region]; i < this.graph.neighborStart[region + 1];
+            i++) {
+          int next = this.graph.neighbors[i];
+          if (this.graph.regionColor[next] == newColor && !this.isFloodedRegion(next)) {
+            this.flooded[next >> 6] |= 1L << next;
+            absorbed++;
+          }
+        }
+      }
+    }
+    return absorbed;
+  }
+
+  // To set the cells of the given world to this state
+  // EFFECT: Mutates the color and flooded fields of the cells and the number of
+  // colors of the world
+  void writeTo(FloodItWorld world) {
+    if (world.boardSize != this.boardSize) {
+      throw new IllegalArgumentException("Expected a board of size " + this.boardSize);
+    }
+    world.numColor = this.numColor;
+    int index = 0;
+    for (ArrayList<Cell> row : world.board) {
+      for (Cell cell : row) {
+        cell.color = FloodItWorld.COLORS.get(this.colorAt(index));
+        cell.flooded = this.isFlooded(index);
+        index++;
+      }
+    }
+  }
+
+  // To determine if the given object is the same state
+  public boolean equals(Object other) {
+    if (!(other instanceof CompactFloodState)) {
+      return false;
+    }
+    CompactFloodState state = (CompactFloodState) other;
+    return this.color == state.color
+        && this.boardSize == state.boardSize
+        && this.colorsHash == state.colorsHash
+        && Arrays.equals(this.flooded, state.flooded)
+        && (this.colors == state.colors || Arrays.equals(this.colors, state.colors));
+  }
+
+  // To get the hash code of this state
+  public int hashCode() {
+    return (this.colorsHash * 31 + Arrays.hashCode(this.flooded)) * 31 + this.color;
+  }
+}
+
+// Represents the compact state played as a game
+class CompactStateEngine implements IFloodEngine {
+  CompactFloodState state;
+
+  // To start a game on the given board, with the top left cell flooded
+  public void start(int boardSize, int numColor, int[] colors) {
+    this.state = new CompactFloodState(boardSize, numColor, colors);
+  }
+
+  // To flood with the given color
+  public void move(int color) {
+    this.state.move(color);
+  }
+
+  // To determine if the given cell is flooded
+  public boolean isFlooded(int cell) {
+    return this.state.isFlooded(cell);
+  }
+
+  // To get the color index of the given cell
+  public int colorAt(int cell) {
+    return this.state.colorAt(cell);
+  }
+}
+
+// Represents examples of the compact state
+class ExamplesFloodItState {
+  ExamplesFloodItState() {
+  }
+
+  FloodItWorld world;
+  CompactFloodState state;
+
+  void InitState() {
+    this.world = ExamplesFloodItWorld.exampleWorld();
+    this.state = CompactFloodState.of(this.world);
+  }
+
+  // To test encoding the example board
+  void testEncode(Tester t) {
+    this.InitState();
+    t.checkExpect(this.state.colors.length, 1);
+    t.checkExpect(this.state.packedColor(0), 2);
+    t.checkExpect(this.state.packedColor(8), 3);
+    for (int cell = 0; cell < 9; cell++) {
+      t.checkExpect(this.state.colorAt(cell), MultiFloodEngine.colorsOf(this.world)[cell]);
+      t.checkExpect(this.state.isFlooded(cell), cell == 0);
+    }
+    int[] cells = new int[100];
+    Arrays.fill(cells, 7);
+    cells[99] = 5;
+    CompactFloodState big = new CompactFloodState(10, 8, cells);
+    t.checkExpect(big.colors.length, 5);
+    t.checkExpect(big.packedColor(98), 7);
+    t.checkExpect(big.packedColor(99), 5);
+    t.checkExpect(big.isFlooded(98), true);
+  }
+
+  // To test the move and copy methods
+  void testMove(Tester t) {
+    this.InitState();
+    CompactFloodState copy = this.state.copy();
+    t.checkExpect(copy.move(0), 1);
+    t.checkExpect(copy.isFlooded(4), true);
+    t.checkExpect(copy.colorAt(0), 0);
+    t.checkExpect(this.state.isFlooded(4), false);
+    t.checkExpect(copy.move(1), 2);
+    t.checkExpect(copy.move(2), 1);
+    t.checkExpect(copy.isSolved(), false);
+    t.checkExpect(copy.move(3), 1);
+    t.checkExpect(copy.isSolved(), true);
+  }
+
+  // To test that states reached by different moves are equal and hash the same
+  void testEquals(Tester t) {
+    this.InitState();
+    CompactFloodState a = this.state.copy();
+    a.move(0);
+    CompactFloodState redOnly = a.copy();
+    a.move(1);
+    CompactFloodState b = this.state.copy();
+    b.move(1);
+    b.move(0);
+    b.move(1);
+    t.checkExpect(a.equals(b), true);
+    t.checkExpect(a.hashCode(), b.hashCode());
+    t.checkExpect(a.equals(redOnly), false);
+    t.checkExpect(a.equals(CompactFloodState.of(this.world)), false);
+    b.writeTo(this.world);
+    t.checkExpect(CompactFloodState.of(this.world).colorsHash == a.colorsHash, false);
+    t.checkExpect(new CompactFloodState(3, 4, ExamplesFloodItWorld.exampleColors()),
+        CompactFloodState.of(ExamplesFloodItWorld.exampleWorld()));
+  }
+
+  // To test the writeTo method
+  void testWriteTo(Tester t) {
+    this.InitState();
+    this.state.move(0);
+    FloodItWorld other = new FloodItWorld(3, 2, new Random(5));
+    this.state.writeTo(other);
+    t.checkExpect(other.numColor, 4);
+    t.checkExpect(other.countFlooded(), 4);
+    t.checkExpect(other.board.get(0).get(0).color, Color.RED);
+    t.checkExpect(other.board.get(1).get(1).flooded, true);
+    t.checkExpect(other.board.get(2).get(2).color, Color.GREEN);
+    t.checkExpect(CompactFloodState.of(other).isFlooded(4), true);
+    t.checkException(new IllegalArgumentException("Expected a board of size 3"), this.state,
+        "writeTo", new FloodItWorld(4, 4, new Random(1)));
+  }
+
+  // To test the compact state against FloodItWorld with the fuzzer
+  void testMatchesFloodItWorld(Tester t) throws InterruptedException {
+    FuzzReport report = new FloodFuzzer(() -> new CompactStateEngine(), 12, 1).run(5, 500, 2);
+    t.checkExpect(report.cases, 500L);
+    t.checkExpect(report.failures.size(), 0);
+  }
+}